@@ -0,0 +1,106 @@
+package org.benetech.servicenet.config;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import com.hazelcast.nio.serialization.Data;
+import org.benetech.servicenet.domain.Authority;
+import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.security.AuthoritiesConstants;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks writing and reading a cached {@link User} with Hazelcast's default Java serialization against
+ * {@link CacheSerializers}. The size of the serialized user, what every entry, backup and near-cache copy costs, is
+ * reported by {@link #serializedSize(Size)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CacheSerializationBenchmark {
+
+    @Param({"java", "compact"})
+    private String serialization;
+
+    private InternalSerializationService serializationService;
+
+    private User user;
+
+    private Data data;
+
+    @Setup
+    public void setup() {
+        SerializationConfig serializationConfig = new SerializationConfig();
+        if ("compact".equals(serialization)) {
+            CacheSerializers.register(serializationConfig);
+        }
+        serializationService = new DefaultSerializationServiceBuilder().setConfig(serializationConfig).build();
+
+        user = new User();
+        user.setId(UUID.randomUUID());
+        user.setLogin("john.doe");
+        user.setPassword("$2a$10$gSAhZrxMllrbgj/kkK9UceBPpChGWJA7SYIb1Mqo.n5aNLq1/oRrC");
+        user.setFirstName("John");
+        user.setLastName("Doe");
+        user.setEmail("john.doe@localhost");
+        user.setActivated(true);
+        user.setLangKey("en");
+        user.setCreatedBy("system");
+        user.setLastModifiedBy("system");
+        user.setLastModifiedDate(Instant.now());
+        Authority userAuthority = new Authority();
+        userAuthority.setName(AuthoritiesConstants.USER);
+        Authority adminAuthority = new Authority();
+        adminAuthority.setName(AuthoritiesConstants.ADMIN);
+        user.setAuthorities(Set.of(userAuthority, adminAuthority));
+
+        data = serializationService.toData(user);
+    }
+
+    @Benchmark
+    public Data serialize() {
+        return serializationService.toData(user);
+    }
+
+    /**
+     * Reports the size of the serialized user as the {@code bytesPerUser} secondary result, which JMH only collects
+     * in this mode. The time measured is meaningless.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public int serializedSize(Size size) {
+        size.bytesPerUser = data.totalSize();
+        return size.bytesPerUser;
+    }
+
+    @Benchmark
+    public User deserialize() {
+        return serializationService.toObject(data);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+
+        public int bytesPerUser;
+    }
+}
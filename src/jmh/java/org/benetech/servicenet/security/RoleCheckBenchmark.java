@@ -0,0 +1,73 @@
+package org.benetech.servicenet.security;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks {@link SecurityUtils#isCurrentUserInRole(String)} on the authentication read from an access token,
+ * against the stream over its authorities it used before {@link AuthorityBitSet}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoleCheckBenchmark {
+
+    private Authentication authentication;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<GrantedAuthority> authorities = AuthorityUtils.createAuthorityList(AuthoritiesConstants.USER,
+            "ROLE_SERVICE_PROVIDER", "ROLE_SACRAMENTO");
+        OAuth2Request request = new OAuth2Request(null, "web_app", null, true, null, null, null, null, null);
+        authentication = new OAuth2Authentication(request,
+            new ServiceNetUserAuthenticationToken("user", "N/A", authorities));
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+    }
+
+    @Benchmark
+    public boolean bitSetHit() {
+        return SecurityUtils.isCurrentUserInRole("ROLE_SACRAMENTO");
+    }
+
+    @Benchmark
+    public boolean bitSetMiss() {
+        return SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ADMIN);
+    }
+
+    @Benchmark
+    public boolean streamHit() {
+        return streamRoleCheck("ROLE_SACRAMENTO");
+    }
+
+    @Benchmark
+    public boolean streamMiss() {
+        return streamRoleCheck(AuthoritiesConstants.ADMIN);
+    }
+
+    private static boolean streamRoleCheck(String authority) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null &&
+            authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).anyMatch(authority::equals);
+    }
+}
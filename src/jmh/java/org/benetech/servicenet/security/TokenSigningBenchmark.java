@@ -0,0 +1,125 @@
+package org.benetech.servicenet.security;
+
+import org.benetech.servicenet.config.UaaProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.TokenEnhancerChain;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+import org.springframework.security.oauth2.provider.token.store.KeyStoreKeyFactory;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the steps of issuing and reading a JWT access token, set up the same way as in
+ * {@link org.benetech.servicenet.config.UaaConfiguration}: the RSA key pair comes from the keystore named by
+ * {@link UaaProperties.KeyStore}, and the token passes through {@link ServiceNetTokenEnhancer} before it is signed.
+ * The {@code algorithm} parameter compares that key with an EC P-256 key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenSigningBenchmark {
+
+    @Param({JwtSigningKey.RS256, JwtSigningKey.ES256})
+    private String algorithm;
+
+    private ServiceNetTokenEnhancer serviceNetTokenEnhancer;
+
+    private JwtAccessTokenConverter jwtAccessTokenConverter;
+
+    private TokenEnhancerChain tokenEnhancerChain;
+
+    private JwtTokenStore tokenStore;
+
+    private OAuth2Authentication authentication;
+
+    private String tokenValue;
+
+    @Setup
+    public void setup() throws Exception {
+        UaaProperties.KeyStore keyStore = new UaaProperties().getKeyStore();
+        KeyPair keyPair = new KeyStoreKeyFactory(new ClassPathResource(keyStore.getName()), keyStore.getPassword().toCharArray())
+            .getKeyPair(keyStore.getAlias());
+        List<JwtSigningKey> keys = new ArrayList<>();
+        keys.add(new JwtSigningKey(keyStore.getAlias(), JwtSigningKey.RS256, keyPair));
+        if (JwtSigningKey.ES256.equals(algorithm)) {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            keys.add(new JwtSigningKey(algorithm, algorithm, generator.generateKeyPair()));
+        }
+        jwtAccessTokenConverter = new KeyRotatingJwtAccessTokenConverter(new JwtSigningKeys(keys, keys.get(keys.size() - 1).getId()));
+        jwtAccessTokenConverter.afterPropertiesSet();
+
+        serviceNetTokenEnhancer = new ServiceNetTokenEnhancer();
+        tokenEnhancerChain = new TokenEnhancerChain();
+        tokenEnhancerChain.setTokenEnhancers(Arrays.asList(serviceNetTokenEnhancer, jwtAccessTokenConverter));
+        tokenStore = new JwtTokenStore(jwtAccessTokenConverter);
+
+        List<GrantedAuthority> authorities = Arrays.asList(
+            new SimpleGrantedAuthority(AuthoritiesConstants.USER), new SimpleGrantedAuthority(AuthoritiesConstants.ADMIN));
+        CustomSpringSecurityUser user = new CustomSpringSecurityUser("benchmark", "", authorities, UUID.randomUUID());
+        OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "web_app", authorities, true,
+            Set.of("openid"), Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+        authentication = new OAuth2Authentication(request, new UsernamePasswordAuthenticationToken(user, null, authorities));
+
+        tokenValue = tokenEnhancerChain.enhance(newAccessToken(), authentication).getValue();
+    }
+
+    @Benchmark
+    public OAuth2AccessToken enhance() {
+        return serviceNetTokenEnhancer.enhance(newAccessToken(), authentication);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken encode() {
+        return jwtAccessTokenConverter.enhance(newAccessToken(), authentication);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken enhanceAndEncode() {
+        return tokenEnhancerChain.enhance(newAccessToken(), authentication);
+    }
+
+    @Benchmark
+    public OAuth2AccessToken decode() {
+        return tokenStore.readAccessToken(tokenValue);
+    }
+
+    private OAuth2AccessToken newAccessToken() {
+        DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+        accessToken.setExpiration(new Date(System.currentTimeMillis() + 300_000L));
+        accessToken.setScope(authentication.getOAuth2Request().getScope());
+        return accessToken;
+    }
+}
@@ -0,0 +1,125 @@
+package org.benetech.servicenet.security;
+
+import com.hazelcast.core.HazelcastInstance;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.benetech.servicenet.config.UaaProperties;
+import org.benetech.servicenet.domain.Authority;
+import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.repository.UserCache;
+import org.benetech.servicenet.repository.UserRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Benchmarks {@link DomainUserDetailsService#loadUserByUsername(String)} against an in-memory {@link UserRepository}
+ * behind a local {@link UserCache}, which leaves the cost of resolving the login to cached credentials,
+ * validating the email form and building the Spring Security user,
+ * or of rejecting an unknown login through {@link KnownPrincipals}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserLookupBenchmark {
+
+    @Param({"1000"})
+    private int users;
+
+    private DomainUserDetailsService userDetailsService;
+
+    @Setup
+    public void setup() {
+        Map<String, User> usersByLogin = new ConcurrentHashMap<>();
+        Map<String, User> usersByEmail = new ConcurrentHashMap<>();
+        Authority authority = new Authority();
+        authority.setName(AuthoritiesConstants.USER);
+        for (int i = 0; i < users; i++) {
+            User user = new User();
+            user.setId(UUID.randomUUID());
+            user.setLogin("user-" + i);
+            user.setEmail("user-" + i + "@localhost");
+            user.setPassword("$2a$10$gSAhZrxMllrbgj/kkK9UceBPpChGWJA7SYIb1Mqo.n5aNLq1/oRrC");
+            user.setActivated(true);
+            user.setAuthorities(Set.of(authority));
+            usersByLogin.put(user.getLogin(), user);
+            usersByEmail.put(user.getEmail(), user);
+        }
+
+        UserRepository userRepository = (UserRepository) Proxy.newProxyInstance(UserRepository.class.getClassLoader(),
+            new Class<?>[] {UserRepository.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "findCredentialsByLogin":
+                        return credentialRows(usersByLogin.get((String) args[0]));
+                    case "findCredentialsByEmailIgnoreCase":
+                        return credentialRows(usersByEmail.get(((String) args[0]).toLowerCase()));
+                    case "streamAllLoginsAndEmails":
+                        return usersByLogin.values().stream()
+                            .map(user -> new Object[] {user.getLogin(), user.getEmail()});
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        KnownPrincipals knownPrincipals = new KnownPrincipals(userRepository,
+            mock(HazelcastInstance.class, RETURNS_DEEP_STUBS), new UaaProperties(), new SimpleMeterRegistry());
+        knownPrincipals.rebuild();
+        userDetailsService = new DomainUserDetailsService(userRepository,
+            new UserCache(userRepository, new ConcurrentMapCacheManager(), new SimpleMeterRegistry()), knownPrincipals);
+    }
+
+    private static List<Object[]> credentialRows(User user) {
+        if (user == null) {
+            return Collections.emptyList();
+        }
+        return user.getAuthorities().stream()
+            .map(authority -> new Object[] {user.getId(), user.getLogin(), user.getEmail(), user.getPassword(),
+                user.getActivated(), user.getSecurityVersion(), user.getVersion(), authority.getName()})
+            .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public UserDetails loadByLogin() {
+        return userDetailsService.loadUserByUsername("USER-" + ThreadLocalRandom.current().nextInt(users));
+    }
+
+    @Benchmark
+    public UserDetails loadByEmail() {
+        return userDetailsService.loadUserByUsername("user-" + ThreadLocalRandom.current().nextInt(users) + "@localhost");
+    }
+
+    @Benchmark
+    public boolean rejectUnknownLogin() {
+        try {
+            return userDetailsService.loadUserByUsername("unknown-" + ThreadLocalRandom.current().nextInt(users)) != null;
+        } catch (UsernameNotFoundException e) {
+            return false;
+        }
+    }
+}
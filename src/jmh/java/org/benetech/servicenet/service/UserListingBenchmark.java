@@ -0,0 +1,120 @@
+package org.benetech.servicenet.service;
+
+import org.benetech.servicenet.ServiceNetAuthApp;
+import org.benetech.servicenet.domain.Authority;
+import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.repository.AuthorityRepository;
+import org.benetech.servicenet.repository.UserRepository;
+import org.benetech.servicenet.security.AuthoritiesConstants;
+import org.benetech.servicenet.service.dto.UserDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading a page of users for {@code GET /api/users} from the test H2 database, by loading the entities
+ * and their authorities as {@link UserDTO#UserDTO(User)} did, and through the projection used by
+ * {@link UserService#getAllManagedUsers(Pageable)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserListingBenchmark {
+
+    private static final int USERS = 2000;
+
+    @Param({"20", "100", "500"})
+    private int pageSize;
+
+    private ConfigurableApplicationContext context;
+
+    private UserRepository userRepository;
+
+    private UserService userService;
+
+    private TransactionTemplate readOnlyTransaction;
+
+    private Pageable pageable;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(ServiceNetAuthApp.class).properties("server.port=0").run();
+        userRepository = context.getBean(UserRepository.class);
+        userService = context.getBean(UserService.class);
+        PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        AuthorityRepository authorityRepository = context.getBean(AuthorityRepository.class);
+        transaction.execute(status -> {
+            Authority user = authorityRepository.getOne(AuthoritiesConstants.USER);
+            Authority admin = authorityRepository.getOne(AuthoritiesConstants.ADMIN);
+            List<User> users = new ArrayList<>(USERS);
+            for (int i = 0; i < USERS; i++) {
+                User entity = new User();
+                entity.setLogin(String.format("bench-%05d", i));
+                entity.setEmail(entity.getLogin() + "@localhost");
+                entity.setPassword("$2a$10$gSAhZrxMllrbgj/kkK9UceBPpChGWJA7SYIb1Mqo.n5aNLq1/oRrC");
+                entity.setFirstName("First " + i);
+                entity.setLastName("Last " + i);
+                entity.setActivated(true);
+                entity.setLangKey("en");
+                Set<Authority> authorities = new HashSet<>();
+                authorities.add(user);
+                if (i % 10 == 0) {
+                    authorities.add(admin);
+                }
+                entity.setAuthorities(authorities);
+                users.add(entity);
+            }
+            return userRepository.saveAll(users);
+        });
+        // a page in the middle of the table, past the users the changelogs insert
+        pageable = PageRequest.of(USERS / pageSize / 2, pageSize, Sort.by("login"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<UserDTO> entities() {
+        return readOnlyTransaction.execute(status -> {
+            Page<User> users = userRepository.findAll(pageable);
+            return users.map(UserDTO::new).getContent();
+        });
+    }
+
+    @Benchmark
+    public List<UserDTO> projection() {
+        return userService.getAllManagedUsers(pageable).getContent();
+    }
+}
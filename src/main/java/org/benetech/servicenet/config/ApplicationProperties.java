@@ -2,6 +2,9 @@ package org.benetech.servicenet.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Properties specific to Service Net Auth.
  * <p>
@@ -10,4 +13,131 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
  */
 @ConfigurationProperties(prefix = "application", ignoreUnknownFields = false)
 public class ApplicationProperties {
+
+    private final Cache cache = new Cache();
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public static class Cache {
+
+        private final NearCache userNearCache = new NearCache();
+
+        private final Map<String, Tier> tiers = new LinkedHashMap<>();
+
+        /**
+         * Near-cache of the {@code users}, {@code userCredentials}, {@code userIdsByLogin} and {@code userIdsByEmail}
+         * Hazelcast maps.
+         */
+        public NearCache getUserNearCache() {
+            return userNearCache;
+        }
+
+        /**
+         * Local tier of the caches, by cache name, in front of their Hazelcast map. Caches not listed here only use
+         * Hazelcast. The user caches can't be listed, they have {@link #getUserNearCache()} instead.
+         */
+        public Map<String, Tier> getTiers() {
+            return tiers;
+        }
+    }
+
+    /**
+     * Local copy, on each node, of the entries of a distributed map it reads, so that repeated reads skip the network
+     * hop to the member owning the entry. Entries are invalidated on every node when they change.
+     */
+    public static class NearCache {
+
+        private boolean enabled = true;
+
+        //maximum number of entries per node and map, least recently used ones are evicted first
+        private int maxSize = 10000;
+
+        //0 keeps entries until they are invalidated or evicted
+        private int timeToLiveSeconds = 3600;
+
+        //0 keeps entries that are not read
+        private int maxIdleSeconds = 0;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getTimeToLiveSeconds() {
+            return timeToLiveSeconds;
+        }
+
+        public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+            this.timeToLiveSeconds = timeToLiveSeconds;
+        }
+
+        public int getMaxIdleSeconds() {
+            return maxIdleSeconds;
+        }
+
+        public void setMaxIdleSeconds(int maxIdleSeconds) {
+            this.maxIdleSeconds = maxIdleSeconds;
+        }
+    }
+
+    /**
+     * The L1 of a cache: entries of its Hazelcast map kept as objects on each node, invalidated by the map's entry
+     * events. Readers share the instances held, so only values that are not modified after being cached belong there.
+     */
+    public static class Tier {
+
+        private TierPolicy policy = TierPolicy.LOCAL_AND_DISTRIBUTED;
+
+        //maximum number of entries per node, least recently used ones are evicted first
+        private int maxSize = 1000;
+
+        //0 keeps entries until they are invalidated or evicted
+        private int timeToLiveSeconds = 300;
+
+        public TierPolicy getPolicy() {
+            return policy;
+        }
+
+        public void setPolicy(TierPolicy policy) {
+            this.policy = policy;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getTimeToLiveSeconds() {
+            return timeToLiveSeconds;
+        }
+
+        public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+            this.timeToLiveSeconds = timeToLiveSeconds;
+        }
+    }
+
+    public enum TierPolicy {
+
+        //entries only live in the Hazelcast map
+        DISTRIBUTED_ONLY,
+
+        //entries are read from the local tier first, and from the Hazelcast map when missing there
+        LOCAL_AND_DISTRIBUTED
+    }
 }
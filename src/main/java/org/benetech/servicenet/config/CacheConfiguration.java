@@ -6,6 +6,16 @@ import io.github.jhipster.config.JHipsterProperties;
 import com.hazelcast.config.*;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.IMap;
+import com.hazelcast.monitor.NearCacheStats;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.benetech.servicenet.repository.ClientRepository;
+import org.benetech.servicenet.repository.UserCache;
+import org.benetech.servicenet.security.UserSecuritySnapshots;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,11 +32,16 @@ import org.springframework.core.env.Environment;
 import org.springframework.core.env.Profiles;
 
 import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.List;
 
 @Configuration
 @EnableCaching
 public class CacheConfiguration {
 
+    private static final List<String> USER_CACHES = Arrays.asList(UserCache.USERS_CACHE,
+        UserCache.USER_CREDENTIALS_CACHE, UserCache.USER_IDS_BY_LOGIN_CACHE, UserCache.USER_IDS_BY_EMAIL_CACHE);
+
     private final Logger log = LoggerFactory.getLogger(CacheConfiguration.class);
 
     private final Environment env;
@@ -35,12 +50,16 @@ public class CacheConfiguration {
 
     private final DiscoveryClient discoveryClient;
 
+    private final ApplicationProperties applicationProperties;
+
     private Registration registration;
 
-    public CacheConfiguration(Environment env, ServerProperties serverProperties, DiscoveryClient discoveryClient) {
+    public CacheConfiguration(Environment env, ServerProperties serverProperties, DiscoveryClient discoveryClient,
+        ApplicationProperties applicationProperties) {
         this.env = env;
         this.serverProperties = serverProperties;
         this.discoveryClient = discoveryClient;
+        this.applicationProperties = applicationProperties;
     }
 
     @Autowired(required = false)
@@ -55,9 +74,11 @@ public class CacheConfiguration {
     }
 
     @Bean
-    public CacheManager cacheManager(HazelcastInstance hazelcastInstance) {
-        log.debug("Starting HazelcastCacheManager");
-        return new com.hazelcast.spring.cache.HazelcastCacheManager(hazelcastInstance);
+    public CacheManager cacheManager(HazelcastInstance hazelcastInstance, MeterRegistry meterRegistry) {
+        log.debug("Starting TieredCacheManager");
+        // UserCache compares and sets its entries on the Hazelcast maps, which have a near-cache instead
+        return new TieredCacheManager(hazelcastInstance, applicationProperties.getCache().getTiers(), USER_CACHES,
+            meterRegistry);
     }
 
     @Bean
@@ -70,6 +91,7 @@ public class CacheConfiguration {
         }
         Config config = new Config();
         config.setInstanceName("ServiceNetAuth");
+        CacheSerializers.register(config.getSerializationConfig());
         config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
         if (this.registration == null) {
             log.warn("No discovery service is set up, Hazelcast cannot create a cluster.");
@@ -106,9 +128,56 @@ public class CacheConfiguration {
         // Full reference is available at: http://docs.hazelcast.org/docs/management-center/3.9/manual/html/Deploying_and_Starting.html
         config.setManagementCenterConfig(initializeDefaultManagementCenterConfig(jHipsterProperties));
         config.getMapConfigs().put("org.benetech.servicenet.domain.*", initializeDomainMapConfig(jHipsterProperties));
+        config.getMapConfigs().put(ClientRepository.CLIENT_DETAILS_CACHE, initializeDomainMapConfig(jHipsterProperties));
+        config.getMapConfigs().put(UserSecuritySnapshots.MAP_NAME, initializeDomainMapConfig(jHipsterProperties));
+        for (String userCache : USER_CACHES) {
+            config.getMapConfigs().put(userCache, initializeUserMapConfig(jHipsterProperties));
+        }
         return Hazelcast.newHazelcastInstance(config);
     }
 
+    /**
+     * Publishes the near-cache hits and misses of the user caches, and their hit ratio.
+     */
+    @Bean
+    public MeterBinder userNearCacheMetrics(HazelcastInstance hazelcastInstance) {
+        return registry -> {
+            for (String userCache : USER_CACHES) {
+                IMap<Object, Object> map = hazelcastInstance.getMap(userCache);
+                FunctionCounter.builder("hazelcast.near.cache.requests", map, m -> hits(nearCacheStats(m)))
+                    .tag("map", userCache)
+                    .tag("result", "hit")
+                    .description("Map reads answered by this node's near-cache")
+                    .register(registry);
+                FunctionCounter.builder("hazelcast.near.cache.requests", map, m -> misses(nearCacheStats(m)))
+                    .tag("map", userCache)
+                    .tag("result", "miss")
+                    .description("Map reads that went to the member owning the entry")
+                    .register(registry);
+                Gauge.builder("hazelcast.near.cache.hit.ratio", map, m -> {
+                    NearCacheStats stats = nearCacheStats(m);
+                    double requests = hits(stats) + misses(stats);
+                    return requests == 0 ? 0 : hits(stats) / requests;
+                })
+                    .tag("map", userCache)
+                    .description("Share of map reads answered by this node's near-cache")
+                    .register(registry);
+            }
+        };
+    }
+
+    private static NearCacheStats nearCacheStats(IMap<?, ?> map) {
+        return map.getLocalMapStats().getNearCacheStats();
+    }
+
+    private static double hits(NearCacheStats stats) {
+        return stats == null ? 0 : stats.getHits();
+    }
+
+    private static double misses(NearCacheStats stats) {
+        return stats == null ? 0 : stats.getMisses();
+    }
+
     private ManagementCenterConfig initializeDefaultManagementCenterConfig(JHipsterProperties jHipsterProperties) {
         ManagementCenterConfig managementCenterConfig = new ManagementCenterConfig();
         managementCenterConfig.setEnabled(jHipsterProperties.getCache().getHazelcast().getManagementCenter().isEnabled());
@@ -147,6 +216,28 @@ public class CacheConfiguration {
         return mapConfig;
     }
 
+    /**
+     * The default map configuration, plus a near-cache on every node that is invalidated whenever an entry changes.
+     * Entries stay serialized in the near-cache, so each read still gets its own copy of the user.
+     */
+    private MapConfig initializeUserMapConfig(JHipsterProperties jHipsterProperties) {
+        MapConfig mapConfig = initializeDefaultMapConfig(jHipsterProperties);
+        ApplicationProperties.NearCache nearCache = applicationProperties.getCache().getUserNearCache();
+        if (nearCache.isEnabled()) {
+            EvictionConfig evictionConfig = new EvictionConfig()
+                .setEvictionPolicy(EvictionPolicy.LRU)
+                .setMaximumSizePolicy(EvictionConfig.MaxSizePolicy.ENTRY_COUNT)
+                .setSize(nearCache.getMaxSize());
+            mapConfig.setNearCacheConfig(new NearCacheConfig()
+                .setInMemoryFormat(InMemoryFormat.BINARY)
+                .setInvalidateOnChange(true)
+                .setTimeToLiveSeconds(nearCache.getTimeToLiveSeconds())
+                .setMaxIdleSeconds(nearCache.getMaxIdleSeconds())
+                .setEvictionConfig(evictionConfig));
+        }
+        return mapConfig;
+    }
+
     private MapConfig initializeDomainMapConfig(JHipsterProperties jHipsterProperties) {
         MapConfig mapConfig = new MapConfig();
         mapConfig.setTimeToLiveSeconds(jHipsterProperties.getCache().getHazelcast().getTimeToLiveSeconds());
@@ -0,0 +1,372 @@
+package org.benetech.servicenet.config;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.StreamSerializer;
+import org.benetech.servicenet.domain.AbstractAuditingEntity;
+import org.benetech.servicenet.domain.Authority;
+import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.repository.EvictedUser;
+import org.benetech.servicenet.repository.UserCredentials;
+import org.benetech.servicenet.security.UserSecuritySnapshot;
+import org.benetech.servicenet.service.dto.UserDTO;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Hazelcast serializers for the values and keys we cache, writing their fields one after the other instead of going
+ * through Java serialization, which writes class descriptors with every entry and, for entities, Hibernate's
+ * collection wrappers.
+ * <p>
+ * The format has no version: all nodes of a cluster must run the same serializers.
+ */
+public final class CacheSerializers {
+
+    private static final int UUID_TYPE_ID = 1001;
+
+    private static final int AUTHORITY_TYPE_ID = 1002;
+
+    private static final int USER_TYPE_ID = 1003;
+
+    private static final int USER_DTO_TYPE_ID = 1004;
+
+    private static final int USER_SECURITY_SNAPSHOT_TYPE_ID = 1005;
+
+    private static final int USER_CREDENTIALS_TYPE_ID = 1006;
+
+    private static final int EVICTED_USER_TYPE_ID = 1007;
+
+    private CacheSerializers() {
+    }
+
+    public static void register(SerializationConfig serializationConfig) {
+        serializationConfig
+            .addSerializerConfig(new SerializerConfig().setTypeClass(UUID.class).setImplementation(new UuidSerializer()))
+            .addSerializerConfig(new SerializerConfig().setTypeClass(Authority.class).setImplementation(new AuthoritySerializer()))
+            .addSerializerConfig(new SerializerConfig().setTypeClass(User.class).setImplementation(new UserSerializer()))
+            .addSerializerConfig(new SerializerConfig().setTypeClass(UserDTO.class).setImplementation(new UserDTOSerializer()))
+            .addSerializerConfig(new SerializerConfig().setTypeClass(UserSecuritySnapshot.class)
+                .setImplementation(new UserSecuritySnapshotSerializer()))
+            .addSerializerConfig(new SerializerConfig().setTypeClass(UserCredentials.class)
+                .setImplementation(new UserCredentialsSerializer()))
+            .addSerializerConfig(new SerializerConfig().setTypeClass(EvictedUser.class)
+                .setImplementation(new EvictedUserSerializer()));
+    }
+
+    static class UuidSerializer implements StreamSerializer<UUID> {
+
+        @Override
+        public void write(ObjectDataOutput out, UUID uuid) throws IOException {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+
+        @Override
+        public UUID read(ObjectDataInput in) throws IOException {
+            return new UUID(in.readLong(), in.readLong());
+        }
+
+        @Override
+        public int getTypeId() {
+            return UUID_TYPE_ID;
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    static class AuthoritySerializer implements StreamSerializer<Authority> {
+
+        @Override
+        public void write(ObjectDataOutput out, Authority authority) throws IOException {
+            out.writeUTF(authority.getName());
+        }
+
+        @Override
+        public Authority read(ObjectDataInput in) throws IOException {
+            return authority(in.readUTF());
+        }
+
+        @Override
+        public int getTypeId() {
+            return AUTHORITY_TYPE_ID;
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    /**
+     * Writes every column of the user, its audit fields, and the names of its authorities, which must be loaded.
+     */
+    static class UserSerializer implements StreamSerializer<User> {
+
+        @Override
+        public void write(ObjectDataOutput out, User user) throws IOException {
+            writeUuid(out, user.getId());
+            out.writeUTF(user.getLogin());
+            out.writeUTF(user.getPassword());
+            out.writeUTF(user.getFirstName());
+            out.writeUTF(user.getLastName());
+            out.writeUTF(user.getEmail());
+            out.writeBoolean(user.getActivated());
+            out.writeUTF(user.getLangKey());
+            out.writeUTF(user.getImageUrl());
+            out.writeUTF(user.getVerificationKey());
+            out.writeUTF(user.getResetKey());
+            writeInstant(out, user.getResetDate());
+            out.writeLong(user.getSecurityVersion());
+            out.writeLong(user.getVersion());
+            writeAudit(out, user);
+            List<String> authorities = new ArrayList<>();
+            for (Authority authority : user.getAuthorities()) {
+                authorities.add(authority.getName());
+            }
+            writeStrings(out, authorities);
+        }
+
+        @Override
+        public User read(ObjectDataInput in) throws IOException {
+            User user = new User();
+            user.setId(readUuid(in));
+            user.setLogin(in.readUTF());
+            user.setPassword(in.readUTF());
+            user.setFirstName(in.readUTF());
+            user.setLastName(in.readUTF());
+            user.setEmail(in.readUTF());
+            user.setActivated(in.readBoolean());
+            user.setLangKey(in.readUTF());
+            user.setImageUrl(in.readUTF());
+            user.setVerificationKey(in.readUTF());
+            user.setResetKey(in.readUTF());
+            user.setResetDate(readInstant(in));
+            user.setSecurityVersion(in.readLong());
+            user.setVersion(in.readLong());
+            readAudit(in, user);
+            Set<Authority> authorities = new HashSet<>();
+            for (String name : readStrings(in, new ArrayList<>(1))) {
+                authorities.add(authority(name));
+            }
+            user.setAuthorities(authorities);
+            return user;
+        }
+
+        @Override
+        public int getTypeId() {
+            return USER_TYPE_ID;
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    static class UserDTOSerializer implements StreamSerializer<UserDTO> {
+
+        @Override
+        public void write(ObjectDataOutput out, UserDTO userDTO) throws IOException {
+            writeUuid(out, userDTO.getId());
+            out.writeUTF(userDTO.getLogin());
+            out.writeUTF(userDTO.getFirstName());
+            out.writeUTF(userDTO.getLastName());
+            out.writeUTF(userDTO.getEmail());
+            out.writeUTF(userDTO.getImageUrl());
+            out.writeBoolean(userDTO.isVerified());
+            out.writeBoolean(userDTO.isActivated());
+            out.writeUTF(userDTO.getLangKey());
+            out.writeUTF(userDTO.getCreatedBy());
+            writeInstant(out, userDTO.getCreatedDate());
+            out.writeUTF(userDTO.getLastModifiedBy());
+            writeInstant(out, userDTO.getLastModifiedDate());
+            writeStrings(out, userDTO.getAuthorities());
+        }
+
+        @Override
+        public UserDTO read(ObjectDataInput in) throws IOException {
+            UserDTO userDTO = new UserDTO();
+            userDTO.setId(readUuid(in));
+            userDTO.setLogin(in.readUTF());
+            userDTO.setFirstName(in.readUTF());
+            userDTO.setLastName(in.readUTF());
+            userDTO.setEmail(in.readUTF());
+            userDTO.setImageUrl(in.readUTF());
+            userDTO.setVerified(in.readBoolean());
+            userDTO.setActivated(in.readBoolean());
+            userDTO.setLangKey(in.readUTF());
+            userDTO.setCreatedBy(in.readUTF());
+            userDTO.setCreatedDate(readInstant(in));
+            userDTO.setLastModifiedBy(in.readUTF());
+            userDTO.setLastModifiedDate(readInstant(in));
+            userDTO.setAuthorities(readStrings(in, new HashSet<>()));
+            return userDTO;
+        }
+
+        @Override
+        public int getTypeId() {
+            return USER_DTO_TYPE_ID;
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    static class UserSecuritySnapshotSerializer implements StreamSerializer<UserSecuritySnapshot> {
+
+        @Override
+        public void write(ObjectDataOutput out, UserSecuritySnapshot snapshot) throws IOException {
+            writeUuid(out, snapshot.getId());
+            out.writeUTF(snapshot.getLogin());
+            out.writeBoolean(snapshot.isActivated());
+            writeStrings(out, snapshot.getAuthorities());
+            out.writeLong(snapshot.getSecurityVersion());
+        }
+
+        @Override
+        public UserSecuritySnapshot read(ObjectDataInput in) throws IOException {
+            return new UserSecuritySnapshot(readUuid(in), in.readUTF(), in.readBoolean(),
+                readStrings(in, new ArrayList<>()), in.readLong());
+        }
+
+        @Override
+        public int getTypeId() {
+            return USER_SECURITY_SNAPSHOT_TYPE_ID;
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    static class UserCredentialsSerializer implements StreamSerializer<UserCredentials> {
+
+        @Override
+        public void write(ObjectDataOutput out, UserCredentials credentials) throws IOException {
+            writeUuid(out, credentials.getId());
+            out.writeUTF(credentials.getLogin());
+            out.writeUTF(credentials.getEmail());
+            out.writeUTF(credentials.getPassword());
+            out.writeBoolean(credentials.isActivated());
+            out.writeLong(credentials.getSecurityVersion());
+            out.writeLong(credentials.getVersion());
+            writeStrings(out, credentials.getAuthorities());
+        }
+
+        @Override
+        public UserCredentials read(ObjectDataInput in) throws IOException {
+            return new UserCredentials(readUuid(in), in.readUTF(), in.readUTF(), in.readUTF(), in.readBoolean(),
+                in.readLong(), in.readLong(), readStrings(in, new ArrayList<>()));
+        }
+
+        @Override
+        public int getTypeId() {
+            return USER_CREDENTIALS_TYPE_ID;
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    static class EvictedUserSerializer implements StreamSerializer<EvictedUser> {
+
+        @Override
+        public void write(ObjectDataOutput out, EvictedUser evictedUser) throws IOException {
+            out.writeLong(evictedUser.getVersion());
+        }
+
+        @Override
+        public EvictedUser read(ObjectDataInput in) throws IOException {
+            return new EvictedUser(in.readLong());
+        }
+
+        @Override
+        public int getTypeId() {
+            return EVICTED_USER_TYPE_ID;
+        }
+
+        @Override
+        public void destroy() {
+        }
+    }
+
+    private static Authority authority(String name) {
+        Authority authority = new Authority();
+        authority.setName(name);
+        return authority;
+    }
+
+    private static void writeAudit(ObjectDataOutput out, AbstractAuditingEntity entity) throws IOException {
+        out.writeUTF(entity.getCreatedBy());
+        writeInstant(out, entity.getCreatedDate());
+        out.writeUTF(entity.getLastModifiedBy());
+        writeInstant(out, entity.getLastModifiedDate());
+    }
+
+    private static void readAudit(ObjectDataInput in, AbstractAuditingEntity entity) throws IOException {
+        entity.setCreatedBy(in.readUTF());
+        entity.setCreatedDate(readInstant(in));
+        entity.setLastModifiedBy(in.readUTF());
+        entity.setLastModifiedDate(readInstant(in));
+    }
+
+    private static void writeUuid(ObjectDataOutput out, UUID uuid) throws IOException {
+        out.writeBoolean(uuid != null);
+        if (uuid != null) {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readUuid(ObjectDataInput in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+    }
+
+    private static void writeInstant(ObjectDataOutput out, Instant instant) throws IOException {
+        out.writeBoolean(instant != null);
+        if (instant != null) {
+            out.writeLong(instant.getEpochSecond());
+            out.writeInt(instant.getNano());
+        }
+    }
+
+    private static Instant readInstant(ObjectDataInput in) throws IOException {
+        return in.readBoolean() ? Instant.ofEpochSecond(in.readLong(), in.readInt()) : null;
+    }
+
+    private static void writeStrings(ObjectDataOutput out, Collection<String> strings) throws IOException {
+        if (strings == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    /**
+     * @return {@code strings} with the strings read added, or {@code null} if {@code null} was written.
+     */
+    private static <C extends Collection<String>> C readStrings(ObjectDataInput in, C strings) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            return null;
+        }
+        for (int i = 0; i < size; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+}
@@ -0,0 +1,159 @@
+package org.benetech.servicenet.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A Hazelcast backed cache (L2) with a Caffeine cache of its entries on each node (L1), see
+ * {@link TieredCacheManager}.
+ * <p>
+ * L1 is filled by reads that miss it, and emptied of a key whenever it changes: right away by writes made through
+ * this cache, and through {@link #invalidateLocal(Object)} by the entry events of the Hazelcast map for writes made
+ * elsewhere, including through {@link #getNativeCache()}. A read that raced with an invalidation drops what it put
+ * in L1, so that L1 never keeps a value older than the invalidation.
+ */
+class TieredCache implements Cache {
+
+    private final Cache distributed;
+
+    private final com.github.benmanes.caffeine.cache.Cache<Object, ValueWrapper> local;
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final LongAdder distributedHits = new LongAdder();
+
+    private final LongAdder distributedMisses = new LongAdder();
+
+    TieredCache(Cache distributed, ApplicationProperties.Tier tier) {
+        this.distributed = distributed;
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+            .maximumSize(tier.getMaxSize())
+            .recordStats();
+        if (tier.getTimeToLiveSeconds() > 0) {
+            builder.expireAfterWrite(Duration.ofSeconds(tier.getTimeToLiveSeconds()));
+        }
+        this.local = builder.build();
+    }
+
+    @Override
+    public String getName() {
+        return distributed.getName();
+    }
+
+    /**
+     * @return the native cache of L2; entries changed through it are invalidated in L1 by the map's entry events.
+     */
+    @Override
+    public Object getNativeCache() {
+        return distributed.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper value = local.getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        long generation = invalidations.get();
+        value = distributed.get(key);
+        if (value == null) {
+            distributedMisses.increment();
+            return null;
+        }
+        distributedHits.increment();
+        fill(key, value, generation);
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper == null ? null : wrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper value = get(key);
+        if (value != null) {
+            return (T) value.get();
+        }
+        long generation = invalidations.get();
+        T loaded = distributed.get(key, valueLoader);
+        fill(key, new SimpleValueWrapper(loaded), generation);
+        return loaded;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        distributed.put(key, value);
+        invalidateLocal(key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = distributed.putIfAbsent(key, value);
+        invalidateLocal(key);
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        distributed.evict(key);
+        invalidateLocal(key);
+    }
+
+    @Override
+    public void clear() {
+        distributed.clear();
+        invalidateLocal();
+    }
+
+    /**
+     * Forgets the L1 entry of a key changed in L2.
+     */
+    void invalidateLocal(Object key) {
+        invalidations.incrementAndGet();
+        local.invalidate(key);
+    }
+
+    /**
+     * Forgets all L1 entries, after L2 was cleared.
+     */
+    void invalidateLocal() {
+        invalidations.incrementAndGet();
+        local.invalidateAll();
+    }
+
+    CacheStats localStats() {
+        return local.stats();
+    }
+
+    long distributedHits() {
+        return distributedHits.sum();
+    }
+
+    long distributedMisses() {
+        return distributedMisses.sum();
+    }
+
+    private void fill(Object key, ValueWrapper value, long generation) {
+        local.put(key, value);
+        // an invalidation that came after the read from L2 may have missed the entry just put
+        if (invalidations.get() != generation) {
+            local.invalidate(key);
+        }
+    }
+}
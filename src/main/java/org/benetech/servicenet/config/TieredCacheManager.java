@@ -0,0 +1,166 @@
+package org.benetech.servicenet.config;
+
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.MapEvent;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryExpiredListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import com.hazelcast.map.listener.MapClearedListener;
+import com.hazelcast.map.listener.MapEvictedListener;
+import com.hazelcast.spring.cache.HazelcastCacheManager;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Cache manager returning the Hazelcast caches of {@link HazelcastCacheManager}, with a local tier on each node in
+ * front of those configured in {@link ApplicationProperties.Cache#getTiers()}, so that their reads mostly skip
+ * Hazelcast altogether.
+ * <p>
+ * The local tier of a cache is invalidated by the entry events of its Hazelcast map, which all nodes receive. Requests
+ * and hit ratios are published for each tier.
+ * <p>
+ * Caches written straight to their Hazelcast map, such as those of {@code UserCache}, can't have a local tier: their
+ * writes would bypass it, and until the entry event arrives a read on the writing node would return the old value.
+ */
+public class TieredCacheManager implements CacheManager {
+
+    private static final String REQUESTS_METRIC_NAME = "tiered.cache.requests";
+
+    private static final String HIT_RATIO_METRIC_NAME = "tiered.cache.hit.ratio";
+
+    private final HazelcastInstance hazelcastInstance;
+
+    private final CacheManager distributed;
+
+    private final Map<String, ApplicationProperties.Tier> tiers;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param untieredCaches the caches written straight to their Hazelcast map.
+     * @throws IllegalArgumentException if one of them is given a local tier.
+     */
+    public TieredCacheManager(HazelcastInstance hazelcastInstance, Map<String, ApplicationProperties.Tier> tiers,
+        Collection<String> untieredCaches, MeterRegistry meterRegistry) {
+        for (String name : untieredCaches) {
+            ApplicationProperties.Tier tier = tiers.get(name);
+            if (tier != null && tier.getPolicy() != ApplicationProperties.TierPolicy.DISTRIBUTED_ONLY) {
+                throw new IllegalArgumentException("The " + name + " cache is written straight to Hazelcast and can't "
+                    + "have a local tier");
+            }
+        }
+        this.hazelcastInstance = hazelcastInstance;
+        this.distributed = new HazelcastCacheManager(hazelcastInstance);
+        this.tiers = tiers;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return distributed.getCacheNames();
+    }
+
+    private Cache createCache(String name) {
+        Cache cache = Objects.requireNonNull(distributed.getCache(name));
+        ApplicationProperties.Tier tier = tiers.get(name);
+        if (tier == null || tier.getPolicy() == ApplicationProperties.TierPolicy.DISTRIBUTED_ONLY) {
+            return cache;
+        }
+        TieredCache tieredCache = new TieredCache(cache, tier);
+        hazelcastInstance.getMap(name).addEntryListener(new LocalInvalidation(tieredCache), false);
+        registerMetrics(tieredCache);
+        return tieredCache;
+    }
+
+    private void registerMetrics(TieredCache cache) {
+        registerMetrics(cache, "l1", c -> c.localStats().hitCount(), c -> c.localStats().missCount());
+        registerMetrics(cache, "l2", TieredCache::distributedHits, TieredCache::distributedMisses);
+    }
+
+    private void registerMetrics(TieredCache cache, String tier, ToDoubleFunction<TieredCache> hits,
+        ToDoubleFunction<TieredCache> misses) {
+        FunctionCounter.builder(REQUESTS_METRIC_NAME, cache, hits)
+            .tag("cache", cache.getName())
+            .tag("tier", tier)
+            .tag("result", "hit")
+            .description("Cache reads answered by this tier")
+            .register(meterRegistry);
+        FunctionCounter.builder(REQUESTS_METRIC_NAME, cache, misses)
+            .tag("cache", cache.getName())
+            .tag("tier", tier)
+            .tag("result", "miss")
+            .description("Cache reads this tier couldn't answer")
+            .register(meterRegistry);
+        Gauge.builder(HIT_RATIO_METRIC_NAME, cache, c -> {
+            double hitCount = hits.applyAsDouble(c);
+            double requests = hitCount + misses.applyAsDouble(c);
+            return requests == 0 ? 0 : hitCount / requests;
+        })
+            .tag("cache", cache.getName())
+            .tag("tier", tier)
+            .description("Share of the reads reaching this tier that it answered")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Forgets the local entries of a cache whose Hazelcast entries changed, on any node.
+     */
+    private static class LocalInvalidation implements EntryUpdatedListener<Object, Object>,
+        EntryRemovedListener<Object, Object>, EntryEvictedListener<Object, Object>,
+        EntryExpiredListener<Object, Object>, MapClearedListener, MapEvictedListener {
+
+        private final TieredCache cache;
+
+        LocalInvalidation(TieredCache cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public void entryUpdated(EntryEvent<Object, Object> event) {
+            cache.invalidateLocal(event.getKey());
+        }
+
+        @Override
+        public void entryRemoved(EntryEvent<Object, Object> event) {
+            cache.invalidateLocal(event.getKey());
+        }
+
+        @Override
+        public void entryEvicted(EntryEvent<Object, Object> event) {
+            cache.invalidateLocal(event.getKey());
+        }
+
+        @Override
+        public void entryExpired(EntryEvent<Object, Object> event) {
+            cache.invalidateLocal(event.getKey());
+        }
+
+        @Override
+        public void mapCleared(MapEvent event) {
+            cache.invalidateLocal();
+        }
+
+        @Override
+        public void mapEvicted(MapEvent event) {
+            cache.invalidateLocal();
+        }
+    }
+}
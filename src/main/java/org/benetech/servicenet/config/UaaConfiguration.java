@@ -1,20 +1,43 @@
 package org.benetech.servicenet.config;
 
 import javax.sql.DataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.benetech.servicenet.repository.ClientRepository;
 import org.benetech.servicenet.security.AuthoritiesConstants;
 import io.github.jhipster.config.JHipsterProperties;
+import org.benetech.servicenet.security.CachingClientDetailsService;
+import org.benetech.servicenet.security.CachingJwtTokenStore;
+import org.benetech.servicenet.security.ClientSecretVerificationCache;
+import org.benetech.servicenet.security.ClientTokenReuse;
+import org.benetech.servicenet.security.JwtSigningKeys;
+import org.benetech.servicenet.security.KeyRotatingJwtAccessTokenConverter;
+import org.benetech.servicenet.security.PasswordHashingUnavailableException;
+import org.benetech.servicenet.security.PasswordHashingUnavailableFilter;
+import org.benetech.servicenet.security.ServiceNetUserAuthenticationConverter;
+import org.benetech.servicenet.security.TokenReuseRequestFactory;
+import org.benetech.servicenet.security.TokenRevocations;
+import org.benetech.servicenet.security.UserSecuritySnapshots;
+import org.benetech.servicenet.security.UserSnapshotRefreshAuthenticationProvider;
 import org.benetech.servicenet.service.ClientService;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.core.userdetails.UserDetailsByNameServiceWrapper;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
 import org.springframework.security.oauth2.config.annotation.configurers.ClientDetailsServiceConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableAuthorizationServer;
@@ -23,19 +46,25 @@ import org.springframework.security.oauth2.config.annotation.web.configuration.R
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerSecurityConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.ResourceServerSecurityConfigurer;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.client.JdbcClientDetailsService;
+import org.springframework.security.oauth2.provider.error.DefaultWebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.error.WebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
 import org.springframework.security.oauth2.provider.token.TokenEnhancer;
 import org.springframework.security.oauth2.provider.token.TokenEnhancerChain;
 import org.springframework.security.oauth2.provider.token.TokenStore;
-import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
 import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
-import org.springframework.security.oauth2.provider.token.store.KeyStoreKeyFactory;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationProvider;
 import org.springframework.web.filter.CorsFilter;
 
 import javax.servlet.http.HttpServletResponse;
-import java.security.KeyPair;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Objects;
 
 @Configuration
 @EnableAuthorizationServer
@@ -84,6 +113,7 @@ public class UaaConfiguration extends AuthorizationServerConfigurerAdapter imple
                 .antMatchers("/api/account/reset-password/init").permitAll()
                 .antMatchers("/api/account/reset-password/finish").permitAll()
                 .antMatchers("/api/**").authenticated()
+                .antMatchers("/.well-known/jwks.json").permitAll()
                 .antMatchers("/management/health").permitAll()
                 .antMatchers("/management/**").hasAuthority(AuthoritiesConstants.ADMIN)
                 .antMatchers("/v2/api-docs/**").permitAll()
@@ -103,17 +133,50 @@ public class UaaConfiguration extends AuthorizationServerConfigurerAdapter imple
 
     private final ClientService clientService;
 
+    private final CacheManager cacheManager;
+
+    private final MeterRegistry meterRegistry;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final ClientSecretVerificationCache clientSecretVerificationCache;
+
+    private final JwtSigningKeys jwtSigningKeys;
+
+    private final ClientTokenReuse clientTokenReuse;
+
+    private final UserDetailsService userDetailsService;
+
+    private final UserSecuritySnapshots userSecuritySnapshots;
+
+    private final TokenRevocations tokenRevocations;
+
     public UaaConfiguration(UaaProperties uaaProperties,
-        DataSource dataSource, ClientService clientService) {
+        DataSource dataSource, ClientService clientService, CacheManager cacheManager, MeterRegistry meterRegistry,
+        PasswordEncoder passwordEncoder, ClientSecretVerificationCache clientSecretVerificationCache,
+        JwtSigningKeys jwtSigningKeys, ClientTokenReuse clientTokenReuse, UserDetailsService userDetailsService,
+        UserSecuritySnapshots userSecuritySnapshots, TokenRevocations tokenRevocations) {
         this.uaaProperties = uaaProperties;
         this.dataSource = dataSource;
         this.clientService = clientService;
+        this.cacheManager = cacheManager;
+        this.meterRegistry = meterRegistry;
+        this.passwordEncoder = passwordEncoder;
+        this.clientSecretVerificationCache = clientSecretVerificationCache;
+        this.jwtSigningKeys = jwtSigningKeys;
+        this.clientTokenReuse = clientTokenReuse;
+        this.userDetailsService = userDetailsService;
+        this.userSecuritySnapshots = userSecuritySnapshots;
+        this.tokenRevocations = tokenRevocations;
     }
 
     @Override
     public void configure(ClientDetailsServiceConfigurer clients) throws Exception {
         clientService.createInitialClients();
-        clients.jdbc(dataSource);
+        clients.withClientDetails(new CachingClientDetailsService(
+            new JdbcClientDetailsService(dataSource),
+            Objects.requireNonNull(cacheManager.getCache(ClientRepository.CLIENT_DETAILS_CACHE)),
+            meterRegistry));
     }
 
     @Override
@@ -123,11 +186,52 @@ public class UaaConfiguration extends AuthorizationServerConfigurerAdapter imple
         Collection<TokenEnhancer> tokenEnhancers = applicationContext.getBeansOfType(TokenEnhancer.class).values();
         TokenEnhancerChain tokenEnhancerChain = new TokenEnhancerChain();
         tokenEnhancerChain.setTokenEnhancers(new ArrayList<>(tokenEnhancers));
+        //the client details service is only set on the endpoints after this method
+        ClientDetailsService clientDetailsService = clientId -> endpoints.getClientDetailsService().loadClientByClientId(clientId);
+        DefaultTokenServices tokenServices = new DefaultTokenServices();
+        tokenServices.setTokenStore(tokenStore());
+        tokenServices.setSupportRefreshToken(true);
+        tokenServices.setReuseRefreshToken(false);  //don't reuse or we will run into session inactivity timeouts
+        tokenServices.setClientDetailsService(clientDetailsService);
+        tokenServices.setTokenEnhancer(tokenEnhancerChain);
+        tokenServices.setAuthenticationManager(new ProviderManager(Collections.singletonList(refreshAuthenticationProvider())));
         endpoints
             .authenticationManager(authenticationManager)
             .tokenStore(tokenStore())
             .tokenEnhancer(tokenEnhancerChain)
-            .reuseRefreshTokens(false);             //don't reuse or we will run into session inactivity timeouts
+            .tokenServices(tokenServices)
+            .requestFactory(new TokenReuseRequestFactory(clientDetailsService))
+            .exceptionTranslator(exceptionTranslator());
+    }
+
+    /**
+     * Re-authenticates the user on a refresh_token grant, from the cached user snapshot unless it is disabled.
+     */
+    private AuthenticationProvider refreshAuthenticationProvider() {
+        PreAuthenticatedAuthenticationProvider byName = new PreAuthenticatedAuthenticationProvider();
+        byName.setPreAuthenticatedUserDetailsService(new UserDetailsByNameServiceWrapper<>(userDetailsService));
+        if (!uaaProperties.getRefreshGrant().isUserSnapshotEnabled()) {
+            return byName;
+        }
+        return new UserSnapshotRefreshAuthenticationProvider(userSecuritySnapshots, byName);
+    }
+
+    /**
+     * Default OAuth2 error translation, plus a {@code Retry-After} header when the password hashing pool is full.
+     */
+    private WebResponseExceptionTranslator<OAuth2Exception> exceptionTranslator() {
+        DefaultWebResponseExceptionTranslator defaultTranslator = new DefaultWebResponseExceptionTranslator();
+        return e -> {
+            ResponseEntity<OAuth2Exception> response = defaultTranslator.translate(e);
+            if (!(response.getBody() instanceof PasswordHashingUnavailableException)) {
+                return response;
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.addAll(response.getHeaders());
+            headers.set(HttpHeaders.RETRY_AFTER,
+                String.valueOf(((PasswordHashingUnavailableException) response.getBody()).getRetryAfterSeconds()));
+            return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+        };
     }
 
     @Autowired
@@ -136,32 +240,39 @@ public class UaaConfiguration extends AuthorizationServerConfigurerAdapter imple
 
     /**
      * Apply the token converter (and enhancer) for token store.
+     * Tokens that were already verified are remembered until they expire, client_credentials tokens are
+     * reused within the client's reuse window, and revoked tokens are rejected.
      * @return the {@link JwtTokenStore} managing the tokens.
      */
     @Bean
     public JwtTokenStore tokenStore() {
-        return new JwtTokenStore(jwtAccessTokenConverter());
+        CachingJwtTokenStore tokenStore = new CachingJwtTokenStore(jwtAccessTokenConverter(),
+            uaaProperties.getTokenVerificationCache(), meterRegistry);
+        tokenStore.setClientTokenReuse(clientTokenReuse);
+        tokenStore.setTokenRevocations(tokenRevocations);
+        return tokenStore;
     }
 
     /**
      * This bean generates an token enhancer, which manages the exchange between JWT access tokens and Authentication
      * in both directions.
      *
-     * @return an access token converter configured with the authorization server's public/private keys.
+     * @return an access token converter that signs with the active key of {@link JwtSigningKeys} and verifies with
+     * any of its keys.
      */
     @Bean
-    public JwtAccessTokenConverter jwtAccessTokenConverter() {
-        JwtAccessTokenConverter converter = new JwtAccessTokenConverter();
-        KeyPair keyPair = new KeyStoreKeyFactory(
-             new ClassPathResource(uaaProperties.getKeyStore().getName()), uaaProperties.getKeyStore().getPassword().toCharArray())
-             .getKeyPair(uaaProperties.getKeyStore().getAlias());
-        converter.setKeyPair(keyPair);
+    public KeyRotatingJwtAccessTokenConverter jwtAccessTokenConverter() {
+        KeyRotatingJwtAccessTokenConverter converter = new KeyRotatingJwtAccessTokenConverter(jwtSigningKeys);
+        ((DefaultAccessTokenConverter) converter.getAccessTokenConverter())
+            .setUserTokenConverter(new ServiceNetUserAuthenticationConverter());
         return converter;
     }
 
     @Override
     public void configure(AuthorizationServerSecurityConfigurer oauthServer) throws Exception {
         oauthServer.tokenKeyAccess("permitAll()").checkTokenAccess(
-                "isAuthenticated()");
+                "isAuthenticated()")
+            .passwordEncoder(clientSecretVerificationCache.wrap(passwordEncoder));
+        oauthServer.addTokenEndpointAuthenticationFilter(new PasswordHashingUnavailableFilter());
     }
 }
@@ -3,6 +3,9 @@ package org.benetech.servicenet.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Properties for UAA-based OAuth2 security.
  */
@@ -21,6 +24,54 @@ public class UaaProperties {
         return webClientConfiguration;
     }
 
+    private ClientSecretCache clientSecretCache = new ClientSecretCache();
+
+    public ClientSecretCache getClientSecretCache() {
+        return clientSecretCache;
+    }
+
+    private PasswordHashing passwordHashing = new PasswordHashing();
+
+    public PasswordHashing getPasswordHashing() {
+        return passwordHashing;
+    }
+
+    private Signing signing = new Signing();
+
+    private TokenVerificationCache tokenVerificationCache = new TokenVerificationCache();
+
+    public TokenVerificationCache getTokenVerificationCache() {
+        return tokenVerificationCache;
+    }
+
+    public Signing getSigning() {
+        return signing;
+    }
+
+    private RefreshGrant refreshGrant = new RefreshGrant();
+
+    public RefreshGrant getRefreshGrant() {
+        return refreshGrant;
+    }
+
+    private TokenRevocation tokenRevocation = new TokenRevocation();
+
+    private KnownPrincipals knownPrincipals = new KnownPrincipals();
+
+    public KnownPrincipals getKnownPrincipals() {
+        return knownPrincipals;
+    }
+
+    public TokenRevocation getTokenRevocation() {
+        return tokenRevocation;
+    }
+
+    private UserSearch userSearch = new UserSearch();
+
+    public UserSearch getUserSearch() {
+        return userSearch;
+    }
+
     /**
      * Keystore configuration for signing and verifying JWT tokens.
      */
@@ -97,4 +148,350 @@ public class UaaProperties {
             this.secret = secret;
         }
     }
+
+    /**
+     * Cache of recently verified client secrets, so client_credentials grants skip the BCrypt check.
+     */
+    public static class ClientSecretCache {
+        //set to false to run the full password check on every client authentication
+        private boolean enabled = true;
+        //how long a successful verification is remembered, keep it short
+        private int timeToLiveSeconds = 60;
+        //maximum number of remembered verifications per node
+        private long maxEntries = 1000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getTimeToLiveSeconds() {
+            return timeToLiveSeconds;
+        }
+
+        public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+            this.timeToLiveSeconds = timeToLiveSeconds;
+        }
+
+        public long getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(long maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    /**
+     * Cache of already verified access tokens, so check_token and resource server requests skip decoding and
+     * signature verification for tokens seen before.
+     */
+    public static class TokenVerificationCache {
+        //set to false to decode and verify the token on every request
+        private boolean enabled = true;
+        //maximum number of remembered tokens per node
+        private long maxEntries = 10000;
+        //upper bound on how long a token is remembered, tokens are always dropped when they expire
+        private int maxTimeToLiveSeconds = 600;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(long maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public int getMaxTimeToLiveSeconds() {
+            return maxTimeToLiveSeconds;
+        }
+
+        public void setMaxTimeToLiveSeconds(int maxTimeToLiveSeconds) {
+            this.maxTimeToLiveSeconds = maxTimeToLiveSeconds;
+        }
+    }
+
+    /**
+     * How the refresh_token grant checks that the user may still get tokens.
+     */
+    public static class RefreshGrant {
+        //validate refreshes against the user's cached security snapshot instead of loading the user from the database
+        private boolean userSnapshotEnabled = true;
+
+        public boolean isUserSnapshotEnabled() {
+            return userSnapshotEnabled;
+        }
+
+        public void setUserSnapshotEnabled(boolean userSnapshotEnabled) {
+            this.userSnapshotEnabled = userSnapshotEnabled;
+        }
+    }
+
+    /**
+     * Revoked tokens and users, and the Bloom filter every node checks before looking them up in Hazelcast.
+     */
+    public static class TokenRevocation {
+        //number of revocations the Bloom filter is sized for, beyond it the filter lets more lookups through
+        private long expectedRevocations = 100000;
+        //share of non revoked tokens that are looked up in Hazelcast anyway
+        private double falsePositiveProbability = 0.01;
+        //how long revoking all of a user's tokens is remembered, must be at least the longest token validity
+        private int userRevocationTimeToLiveSeconds = 30 * 24 * 60 * 60;
+
+        public long getExpectedRevocations() {
+            return expectedRevocations;
+        }
+
+        public void setExpectedRevocations(long expectedRevocations) {
+            this.expectedRevocations = expectedRevocations;
+        }
+
+        public double getFalsePositiveProbability() {
+            return falsePositiveProbability;
+        }
+
+        public void setFalsePositiveProbability(double falsePositiveProbability) {
+            this.falsePositiveProbability = falsePositiveProbability;
+        }
+
+        public int getUserRevocationTimeToLiveSeconds() {
+            return userRevocationTimeToLiveSeconds;
+        }
+
+        public void setUserRevocationTimeToLiveSeconds(int userRevocationTimeToLiveSeconds) {
+            this.userRevocationTimeToLiveSeconds = userRevocationTimeToLiveSeconds;
+        }
+    }
+
+    /**
+     * Bloom filter of the existing logins and emails, which rejects unknown ones before they reach the database.
+     */
+    public static class KnownPrincipals {
+        //set to false to look every login up in the database
+        private boolean enabled = true;
+        //number of logins plus emails the filter is sized for, beyond it more unknown logins reach the database
+        private long expectedPrincipals = 200000;
+        //share of unknown logins that are looked up in the database anyway
+        private double falsePositiveProbability = 0.01;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getExpectedPrincipals() {
+            return expectedPrincipals;
+        }
+
+        public void setExpectedPrincipals(long expectedPrincipals) {
+            this.expectedPrincipals = expectedPrincipals;
+        }
+
+        public double getFalsePositiveProbability() {
+            return falsePositiveProbability;
+        }
+
+        public void setFalsePositiveProbability(double falsePositiveProbability) {
+            this.falsePositiveProbability = falsePositiveProbability;
+        }
+    }
+
+    /**
+     * Search of users by login, email and name, see {@code GET /api/users/_search}.
+     */
+    public static class UserSearch {
+        //set to true on PostgreSQL to find users by trigram word similarity through the trigram indexes, once
+        //EXPLAIN ANALYZE on production-sized data has shown the query uses them; otherwise the whole table is read
+        private boolean trigrams = false;
+
+        public boolean isTrigrams() {
+            return trigrams;
+        }
+
+        public void setTrigrams(boolean trigrams) {
+            this.trigrams = trigrams;
+        }
+    }
+
+    /**
+     * Dedicated thread pool that runs every password hash and password check.
+     */
+    public static class PasswordHashing {
+        //algorithm new hashes are made with (bcrypt, pbkdf2, scrypt or argon2), older hashes are upgraded on login
+        private String algorithm = "bcrypt";
+        //BCrypt cost new BCrypt hashes are made with, hashes with another cost are upgraded on login
+        private int strength = 10;
+        //hashing time the startup calibration compares the measured hash time against
+        private int latencyBudgetMillis = 100;
+        //number of hashing threads, 0 means one per available processor
+        private int threads = 0;
+        //hashing requests allowed to wait for a thread, the rest are rejected with 503
+        private int queueCapacity = 100;
+        //value of the Retry-After header sent with a rejection
+        private int retryAfterSeconds = 1;
+        //hashes a bulk user import has running at once, 0 means half the hashing threads, leaving the rest to logins
+        private int importParallelism = 0;
+
+        public String getAlgorithm() {
+            return algorithm;
+        }
+
+        public void setAlgorithm(String algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        public int getStrength() {
+            return strength;
+        }
+
+        public void setStrength(int strength) {
+            this.strength = strength;
+        }
+
+        public int getLatencyBudgetMillis() {
+            return latencyBudgetMillis;
+        }
+
+        public void setLatencyBudgetMillis(int latencyBudgetMillis) {
+            this.latencyBudgetMillis = latencyBudgetMillis;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        public void setRetryAfterSeconds(int retryAfterSeconds) {
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public int getImportParallelism() {
+            return importParallelism;
+        }
+
+        public void setImportParallelism(int importParallelism) {
+            this.importParallelism = importParallelism;
+        }
+    }
+
+    /**
+     * JWT signing keys in addition to the key-store key, identified by the "kid" token header.
+     * <p>
+     * To rotate, add the new key, let resource servers pick it up from the JWK set, make it the active key, and
+     * remove the old one once the tokens it signed have expired.
+     */
+    public static class Signing {
+        //id of the key new tokens are signed with, empty means the key-store key, whose id is its alias
+        private String activeKeyId = "";
+        //how long clients may cache the JWK set, in seconds
+        private int jwksMaxAgeSeconds = 300;
+        //keys that are served in the JWK set and accepted on tokens
+        private List<Key> keys = new ArrayList<>();
+
+        public String getActiveKeyId() {
+            return activeKeyId;
+        }
+
+        public void setActiveKeyId(String activeKeyId) {
+            this.activeKeyId = activeKeyId;
+        }
+
+        public int getJwksMaxAgeSeconds() {
+            return jwksMaxAgeSeconds;
+        }
+
+        public void setJwksMaxAgeSeconds(int jwksMaxAgeSeconds) {
+            this.jwksMaxAgeSeconds = jwksMaxAgeSeconds;
+        }
+
+        public List<Key> getKeys() {
+            return keys;
+        }
+
+        public void setKeys(List<Key> keys) {
+            this.keys = keys;
+        }
+
+        public static class Key {
+            //the "kid" of tokens signed with this key
+            private String id;
+            //JWS algorithm, ES256 (EC P-256) or RS256
+            private String algorithm = "ES256";
+            //keystore in the classpath, defaults to uaa.key-store.name
+            private String keyStoreName;
+            //password of the keystore and key, defaults to uaa.key-store.password
+            private String keyStorePassword;
+            //name of the alias to fetch
+            private String alias;
+
+            public String getId() {
+                return id;
+            }
+
+            public void setId(String id) {
+                this.id = id;
+            }
+
+            public String getAlgorithm() {
+                return algorithm;
+            }
+
+            public void setAlgorithm(String algorithm) {
+                this.algorithm = algorithm;
+            }
+
+            public String getKeyStoreName() {
+                return keyStoreName;
+            }
+
+            public void setKeyStoreName(String keyStoreName) {
+                this.keyStoreName = keyStoreName;
+            }
+
+            public String getKeyStorePassword() {
+                return keyStorePassword;
+            }
+
+            public void setKeyStorePassword(String keyStorePassword) {
+                this.keyStorePassword = keyStorePassword;
+            }
+
+            public String getAlias() {
+                return alias;
+            }
+
+            public void setAlias(String alias) {
+                this.alias = alias;
+            }
+        }
+    }
 }
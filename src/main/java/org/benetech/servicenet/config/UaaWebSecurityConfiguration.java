@@ -1,5 +1,8 @@
 package org.benetech.servicenet.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.benetech.servicenet.security.BoundedPasswordEncoder;
+import org.benetech.servicenet.security.UpgradingPasswordEncoder;
 import org.springframework.beans.factory.BeanInitializationException;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -11,7 +14,6 @@ import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.data.repository.query.SecurityEvaluationContextExtension;
 
@@ -26,9 +28,16 @@ public class UaaWebSecurityConfiguration extends WebSecurityConfigurerAdapter {
 
     private final AuthenticationManagerBuilder authenticationManagerBuilder;
 
-    public UaaWebSecurityConfiguration(UserDetailsService userDetailsService, AuthenticationManagerBuilder authenticationManagerBuilder) {
+    private final UaaProperties uaaProperties;
+
+    private final MeterRegistry meterRegistry;
+
+    public UaaWebSecurityConfiguration(UserDetailsService userDetailsService, AuthenticationManagerBuilder authenticationManagerBuilder,
+        UaaProperties uaaProperties, MeterRegistry meterRegistry) {
         this.userDetailsService = userDetailsService;
         this.authenticationManagerBuilder = authenticationManagerBuilder;
+        this.uaaProperties = uaaProperties;
+        this.meterRegistry = meterRegistry;
     }
 
     @PostConstruct
@@ -42,9 +51,20 @@ public class UaaWebSecurityConfiguration extends WebSecurityConfigurerAdapter {
         }
     }
 
+    /**
+     * Password encoder for user passwords and client secrets. Hashing runs on its own bounded pool, so a login
+     * burst cannot take every request thread, and hashes made with another algorithm or cost than the configured
+     * one are upgraded on login.
+     *
+     * @return the password encoder.
+     */
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        UaaProperties.PasswordHashing passwordHashing = uaaProperties.getPasswordHashing();
+        int threads = passwordHashing.getThreads() > 0 ? passwordHashing.getThreads() : Runtime.getRuntime().availableProcessors();
+        PasswordEncoder target = new UpgradingPasswordEncoder(passwordHashing.getAlgorithm(), passwordHashing.getStrength());
+        return new BoundedPasswordEncoder(target, threads, passwordHashing.getQueueCapacity(),
+            passwordHashing.getRetryAfterSeconds(), meterRegistry);
     }
 
     @Override
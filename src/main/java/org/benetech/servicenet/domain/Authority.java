@@ -1,8 +1,10 @@
 package org.benetech.servicenet.domain;
 
+import org.benetech.servicenet.service.AuthorityRegistryListener;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.Id;
 import javax.persistence.Table;
 import javax.persistence.Column;
@@ -17,6 +19,7 @@ import java.util.Objects;
 @Entity
 @Table(name = "jhi_authority")
 @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+@EntityListeners(AuthorityRegistryListener.class)
 public class Authority implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -2,6 +2,8 @@ package org.benetech.servicenet.domain;
 
 import java.util.UUID;
 import org.benetech.servicenet.config.Constants;
+import org.benetech.servicenet.repository.UserCacheListener;
+import org.benetech.servicenet.security.KnownPrincipalsListener;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.apache.commons.lang3.StringUtils;
@@ -27,6 +29,7 @@ import org.hibernate.annotations.GenericGenerator;
 @Entity
 @Table(name = "jhi_user")
 @Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
+@EntityListeners({KnownPrincipalsListener.class, UserCacheListener.class})
 public class User extends AbstractAuditingEntity implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -47,8 +50,8 @@ public class User extends AbstractAuditingEntity implements Serializable {
 
     @JsonIgnore
     @NotNull
-    @Size(min = 60, max = 60)
-    @Column(name = "password_hash", length = 60, nullable = false)
+    @Size(min = 60, max = 255)
+    @Column(name = "password_hash", length = 255, nullable = false)
     private String password;
 
     @Size(max = 50)
@@ -89,6 +92,15 @@ public class User extends AbstractAuditingEntity implements Serializable {
     @Column(name = "reset_date")
     private Instant resetDate = null;
 
+    @JsonIgnore
+    @Column(name = "security_version", nullable = false)
+    private long securityVersion = 0;
+
+    @JsonIgnore
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version = 0;
+
     @JsonIgnore
     @ManyToMany
     @JoinTable(
@@ -188,6 +200,22 @@ public class User extends AbstractAuditingEntity implements Serializable {
         this.resetDate = resetDate;
     }
 
+    public long getSecurityVersion() {
+        return securityVersion;
+    }
+
+    public void setSecurityVersion(long securityVersion) {
+        this.securityVersion = securityVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public String getLangKey() {
         return langKey;
     }
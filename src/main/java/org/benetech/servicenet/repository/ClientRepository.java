@@ -11,5 +11,8 @@ import org.springframework.data.jpa.repository.JpaRepository;
  * Spring Data JPA repository for the {@link Client} entity.
  */
 public interface ClientRepository extends JpaRepository<Client, String> {
+
+    String CLIENT_DETAILS_CACHE = "oauthClientDetails";
+
     Page<Client> findAllByClientIdNotIn(Collection<String> clientId, Pageable pageable);
 }
@@ -0,0 +1,22 @@
+package org.benetech.servicenet.repository;
+
+import java.io.Serializable;
+
+/**
+ * What {@link UserCache} keeps in place of a user it invalidated: the version the user was changed to, so that copies
+ * of older versions loaded meanwhile can't take its place.
+ */
+public class EvictedUser implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long version;
+
+    public EvictedUser(long version) {
+        this.version = version;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,315 @@
+package org.benetech.servicenet.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.benetech.servicenet.domain.User;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Users with their authorities, and the {@link UserCredentials} used to authenticate them, cached once by id and
+ * found by login or email through two small indexes of ids.
+ * <p>
+ * Cached users carry their {@link User#getVersion() version}. Updates and deletes are {@link #invalidate(UUID, long)
+ * invalidated} by {@link UserCacheListener} once their transaction commits, by replacing the cached entries with an
+ * {@link EvictedUser} of the new version, and a load only replaces an entry of an older version or the tombstone of
+ * its own. A load that read the user before the change committed can thus never overwrite the invalidation, and a
+ * transaction that changed users neither reads nor fills the cache until it ends. Index entries are not invalidated:
+ * the user an index entry leads to is only used if its login or email still matches, so entries left behind by a
+ * rename or a delete just cause a reload.
+ * <p>
+ * Concurrent misses for the same key on a node are loaded once: the first caller queries the database while the
+ * others wait for it and then read what it cached.
+ */
+@Component
+public class UserCache {
+
+    public static final String USERS_CACHE = "users";
+
+    public static final String USER_CREDENTIALS_CACHE = "userCredentials";
+
+    public static final String USER_IDS_BY_LOGIN_CACHE = "userIdsByLogin";
+
+    public static final String USER_IDS_BY_EMAIL_CACHE = "userIdsByEmail";
+
+    private static final String METRIC_NAME = "user.cache.loads";
+
+    // a compare-and-set of a Hazelcast entry fails if the value read back doesn't serialize to the same bytes
+    private static final int MAX_PUT_ATTEMPTS = 3;
+
+    private final UserRepository userRepository;
+
+    private final Cache users;
+
+    private final Cache credentials;
+
+    private final Cache idsByLogin;
+
+    private final Cache idsByEmail;
+
+    private final Map<String, CompletableFuture<Boolean>> loads = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> loadedCounters = new HashMap<>();
+
+    private final Map<String, Counter> coalescedCounters = new HashMap<>();
+
+    public UserCache(@Lazy UserRepository userRepository, CacheManager cacheManager, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.users = Objects.requireNonNull(cacheManager.getCache(USERS_CACHE));
+        this.credentials = Objects.requireNonNull(cacheManager.getCache(USER_CREDENTIALS_CACHE));
+        this.idsByLogin = Objects.requireNonNull(cacheManager.getCache(USER_IDS_BY_LOGIN_CACHE));
+        this.idsByEmail = Objects.requireNonNull(cacheManager.getCache(USER_IDS_BY_EMAIL_CACHE));
+        for (String cacheName : Arrays.asList(USERS_CACHE, USER_CREDENTIALS_CACHE)) {
+            loadedCounters.put(cacheName, Counter.builder(METRIC_NAME)
+                .tag("cache", cacheName)
+                .tag("result", "loaded")
+                .description("Cache misses loaded from the database")
+                .register(meterRegistry));
+            coalescedCounters.put(cacheName, Counter.builder(METRIC_NAME)
+                .tag("cache", cacheName)
+                .tag("result", "coalesced")
+                .description("Cache misses that waited for the same load by another thread")
+                .register(meterRegistry));
+        }
+    }
+
+    /**
+     * @param login a lowercase login.
+     */
+    @Transactional(readOnly = true)
+    public Optional<User> findOneWithAuthoritiesByLogin(String login) {
+        return find(users, User.class, idsByLogin, login, User::getLogin,
+            () -> userRepository.findOneWithAuthoritiesByLogin(login), this::put);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<User> findOneWithAuthoritiesByEmailIgnoreCase(String email) {
+        return find(users, User.class, idsByEmail, email.toLowerCase(Locale.ENGLISH), user -> lowercase(user.getEmail()),
+            () -> userRepository.findOneWithAuthoritiesByEmailIgnoreCase(email), this::put);
+    }
+
+    /**
+     * @param login a lowercase login.
+     */
+    @Transactional(readOnly = true)
+    public Optional<UserCredentials> findCredentialsByLogin(String login) {
+        return find(credentials, UserCredentials.class, idsByLogin, login, UserCredentials::getLogin,
+            () -> UserCredentials.of(userRepository.findCredentialsByLogin(login)), this::put);
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<UserCredentials> findCredentialsByEmailIgnoreCase(String email) {
+        return find(credentials, UserCredentials.class, idsByEmail, email.toLowerCase(Locale.ENGLISH),
+            userCredentials -> lowercase(userCredentials.getEmail()),
+            () -> UserCredentials.of(userRepository.findCredentialsByEmailIgnoreCase(email)), this::put);
+    }
+
+    /**
+     * Invalidates the cached copies of the user older than {@code version} on all nodes, once the current transaction
+     * commits, or right away outside of a transaction. Until then the current transaction bypasses the cache for it.
+     *
+     * @param version the version of the user written by the current transaction, {@link Long#MAX_VALUE} once deleted.
+     */
+    public void invalidate(UUID id, long version) {
+        Invalidations invalidations = currentInvalidations();
+        if (invalidations == null) {
+            putTombstone(id, version);
+        } else {
+            invalidations.versions.merge(id, version, Math::max);
+        }
+    }
+
+    private <T> Optional<T> find(Cache cache, Class<T> type, Cache index, String key, Function<T, String> keyOf,
+        Supplier<Optional<T>> loader, Consumer<T> put) {
+        Invalidations invalidations = (Invalidations) TransactionSynchronizationManager.getResource(this);
+        if (invalidations != null && !invalidations.versions.isEmpty()) {
+            // the current transaction changed users: leave the cache alone rather than finding out whether this is one
+            return loader.get();
+        }
+        Optional<T> cached = cached(cache, type, index, key, keyOf);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        String loadKey = cache.getName() + '/' + index.getName() + '/' + key;
+        CompletableFuture<Boolean> load = new CompletableFuture<>();
+        CompletableFuture<Boolean> otherLoad = loads.putIfAbsent(loadKey, load);
+        if (otherLoad != null) {
+            coalescedCounters.get(cache.getName()).increment();
+            try {
+                if (!otherLoad.join()) {
+                    return Optional.empty();
+                }
+                // each caller gets its own copy from the cache, not the instance the other thread loaded
+                cached = cached(cache, type, index, key, keyOf);
+                if (cached.isPresent()) {
+                    return cached;
+                }
+            } catch (CompletionException | CancellationException e) {
+                // the other load failed, try again
+            }
+            Optional<T> loaded = loader.get();
+            loaded.ifPresent(put);
+            return loaded;
+        }
+        loadedCounters.get(cache.getName()).increment();
+        try {
+            Optional<T> loaded = loader.get();
+            loaded.ifPresent(put);
+            load.complete(loaded.isPresent());
+            return loaded;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(loadKey, load);
+        }
+    }
+
+    private static <T> Optional<T> cached(Cache cache, Class<T> type, Cache index, String key, Function<T, String> keyOf) {
+        UUID id = index.get(key, UUID.class);
+        if (id != null) {
+            Cache.ValueWrapper wrapper = cache.get(id);
+            Object value = wrapper == null ? null : wrapper.get();
+            if (type.isInstance(value) && key.equals(keyOf.apply(type.cast(value)))) {
+                return Optional.of(type.cast(value));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void put(User user) {
+        if (putIfNewer(users, user.getId(), user, user.getVersion())) {
+            index(user.getId(), user.getLogin(), user.getEmail());
+        }
+    }
+
+    private void put(UserCredentials userCredentials) {
+        if (putIfNewer(credentials, userCredentials.getId(), userCredentials, userCredentials.getVersion())) {
+            index(userCredentials.getId(), userCredentials.getLogin(), userCredentials.getEmail());
+        }
+    }
+
+    private void putTombstone(UUID id, long version) {
+        EvictedUser tombstone = new EvictedUser(version);
+        putIfNewer(users, id, tombstone, version);
+        putIfNewer(credentials, id, tombstone, version);
+    }
+
+    /**
+     * Caches the value unless the cache holds a newer version of the user, or the same version of it not evicted.
+     * Tombstones that lose the race to another writer too often are put anyway, since they only cause a reload.
+     *
+     * @return whether the value was cached.
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean putIfNewer(Cache cache, UUID id, Object value, long version) {
+        if (!(cache.getNativeCache() instanceof ConcurrentMap)) {
+            cache.put(id, value);
+            return true;
+        }
+        ConcurrentMap<Object, Object> map = (ConcurrentMap<Object, Object>) cache.getNativeCache();
+        for (int attempt = 0; attempt < MAX_PUT_ATTEMPTS; attempt++) {
+            Object existing = map.get(id);
+            if (existing == null) {
+                if (map.putIfAbsent(id, value) == null) {
+                    return true;
+                }
+                continue;
+            }
+            long existingVersion = versionOf(existing);
+            if (existingVersion > version || (existingVersion == version
+                && (!(existing instanceof EvictedUser) || value instanceof EvictedUser))) {
+                return false;
+            }
+            if (map.replace(id, existing, value)) {
+                return true;
+            }
+        }
+        if (value instanceof EvictedUser) {
+            map.put(id, value);
+            return true;
+        }
+        return false;
+    }
+
+    private static long versionOf(Object value) {
+        if (value instanceof User) {
+            return ((User) value).getVersion();
+        }
+        if (value instanceof UserCredentials) {
+            return ((UserCredentials) value).getVersion();
+        }
+        if (value instanceof EvictedUser) {
+            return ((EvictedUser) value).getVersion();
+        }
+        // not something this class cached, let anything replace it
+        return -1;
+    }
+
+    /**
+     * @return the users invalidated by the current transaction, {@code null} outside of a transaction.
+     */
+    private Invalidations currentInvalidations() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+        Invalidations invalidations = (Invalidations) TransactionSynchronizationManager.getResource(this);
+        if (invalidations == null) {
+            invalidations = new Invalidations();
+            TransactionSynchronizationManager.bindResource(this, invalidations);
+            TransactionSynchronizationManager.registerSynchronization(invalidations);
+        }
+        return invalidations;
+    }
+
+    /**
+     * The users changed by a transaction, with their latest versions, invalidated once it commits.
+     */
+    private class Invalidations extends TransactionSynchronizationAdapter {
+
+        private final Map<UUID, Long> versions = new LinkedHashMap<>();
+
+        @Override
+        public void afterCommit() {
+            versions.forEach(UserCache.this::putTombstone);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(UserCache.this);
+        }
+    }
+
+    private void index(UUID id, String login, String email) {
+        idsByLogin.put(login, id);
+        if (email != null) {
+            idsByEmail.put(lowercase(email), id);
+        }
+    }
+
+    private static String lowercase(String email) {
+        return email == null ? null : email.toLowerCase(Locale.ENGLISH);
+    }
+}
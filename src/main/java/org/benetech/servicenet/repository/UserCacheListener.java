@@ -0,0 +1,31 @@
+package org.benetech.servicenet.repository;
+
+import org.benetech.servicenet.domain.User;
+
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Entity listener invalidating the {@link UserCache} entries of every updated or deleted {@link User}, whichever way
+ * it was changed. Hibernate gets it from the Spring context, with its dependencies injected.
+ * <p>
+ * New users are left alone: nothing can be cached under an id before it is inserted.
+ */
+public class UserCacheListener {
+
+    private final UserCache userCache;
+
+    public UserCacheListener(UserCache userCache) {
+        this.userCache = userCache;
+    }
+
+    @PostUpdate
+    public void userUpdated(User user) {
+        userCache.invalidate(user.getId(), user.getVersion());
+    }
+
+    @PostRemove
+    public void userRemoved(User user) {
+        userCache.invalidate(user.getId(), Long.MAX_VALUE);
+    }
+}
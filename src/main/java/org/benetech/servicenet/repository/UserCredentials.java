@@ -0,0 +1,96 @@
+package org.benetech.servicenet.repository;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * What authenticating a user needs: its login, email, password hash, activation, security version and authority
+ * names, with the version of the user they were read from, read with a single query instead of loading the {@link org.benetech.servicenet.domain.User} entity.
+ */
+public class UserCredentials implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final UUID id;
+
+    private final String login;
+
+    private final String email;
+
+    private final String password;
+
+    private final boolean activated;
+
+    private final long securityVersion;
+
+    private final long version;
+
+    private final List<String> authorities;
+
+    public UserCredentials(UUID id, String login, String email, String password, boolean activated,
+        long securityVersion, long version, List<String> authorities) {
+        this.id = id;
+        this.login = login;
+        this.email = email;
+        this.password = password;
+        this.activated = activated;
+        this.securityVersion = securityVersion;
+        this.version = version;
+        this.authorities = Collections.unmodifiableList(new ArrayList<>(authorities));
+    }
+
+    /**
+     * @param rows the rows of one user from {@link UserRepository#findCredentialsByLogin(String)} or
+     *             {@link UserRepository#findCredentialsByEmailIgnoreCase(String)}, one per authority.
+     */
+    static Optional<UserCredentials> of(List<Object[]> rows) {
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        List<String> authorities = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            if (row[7] != null) {
+                authorities.add((String) row[7]);
+            }
+        }
+        Object[] row = rows.get(0);
+        return Optional.of(new UserCredentials((UUID) row[0], (String) row[1], (String) row[2], (String) row[3],
+            (Boolean) row[4], (Long) row[5], (Long) row[6], authorities));
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public boolean isActivated() {
+        return activated;
+    }
+
+    public long getSecurityVersion() {
+        return securityVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<String> getAuthorities() {
+        return authorities;
+    }
+}
@@ -3,16 +3,23 @@ package org.benetech.servicenet.repository;
 import java.util.UUID;
 import org.benetech.servicenet.domain.User;
 
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 import java.time.Instant;
 
 /**
@@ -21,9 +28,7 @@ import java.time.Instant;
 @Repository
 public interface UserRepository extends JpaRepository<User, UUID> {
 
-    String USERS_BY_LOGIN_CACHE = "usersByLogin";
-
-    String USERS_BY_EMAIL_CACHE = "usersByEmail";
+    int STREAM_FETCH_SIZE = 500;
 
     Optional<User> findOneByVerificationKey(String verificationKey);
 
@@ -38,15 +43,82 @@ public interface UserRepository extends JpaRepository<User, UUID> {
     @EntityGraph(attributePaths = "authorities")
     Optional<User> findOneWithAuthoritiesById(UUID id);
 
+    /**
+     * Not cached, see {@link UserCache} for the cached lookup.
+     */
     @EntityGraph(attributePaths = "authorities")
-    @Cacheable(cacheNames = USERS_BY_LOGIN_CACHE)
     Optional<User> findOneWithAuthoritiesByLogin(String login);
 
+    /**
+     * Not cached, see {@link UserCache} for the cached lookup.
+     */
     @EntityGraph(attributePaths = "authorities")
-    @Cacheable(cacheNames = USERS_BY_EMAIL_CACHE)
     Optional<User> findOneWithAuthoritiesByEmailIgnoreCase(String email);
 
-    Page<User> findAllByLoginNot(Pageable pageable, String login);
+    /**
+     * @return the credentials of the user with that login, as one row per authority; see {@link UserCredentials}.
+     */
+    @Query("select u.id, u.login, u.email, u.password, u.activated, u.securityVersion, u.version, a.name " +
+        "from User u left join u.authorities a where u.login = :login")
+    List<Object[]> findCredentialsByLogin(@Param("login") String login);
+
+    /**
+     * @return the credentials of the user with that email, as one row per authority; see {@link UserCredentials}.
+     */
+    @Query("select u.id, u.login, u.email, u.password, u.activated, u.securityVersion, u.version, a.name " +
+        "from User u left join u.authorities a where lower(u.email) = lower(:email)")
+    List<Object[]> findCredentialsByEmailIgnoreCase(@Param("email") String email);
+
+    Page<UserSummary> findAllByLoginNot(String login, Pageable pageable);
+
+    /**
+     * @return a slice of the users, without counting them all. The methods below return the users after a given
+     * login or id in that order, which the index on it finds without reading the users before.
+     */
+    Slice<UserSummary> findSliceByLoginNot(String login, Pageable pageable);
+
+    Slice<UserSummary> findSliceByLoginNotAndLoginGreaterThan(String login, String after, Pageable pageable);
+
+    Slice<UserSummary> findSliceByLoginNotAndLoginLessThan(String login, String before, Pageable pageable);
+
+    Slice<UserSummary> findSliceByLoginNotAndIdGreaterThan(String login, UUID after, Pageable pageable);
+
+    Slice<UserSummary> findSliceByLoginNotAndIdLessThan(String login, UUID before, Pageable pageable);
+
+    List<UserSummary> findSummariesByIdIn(Collection<UUID> ids);
+
+    /**
+     * @return all users but the one with that login, read through a forward-only cursor fetching
+     * {@value #STREAM_FETCH_SIZE} rows at a time. The stream must be read in a transaction, and closed.
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    Stream<UserSummary> streamAllByLoginNotOrderById(String login);
+
+    /**
+     * @return the id of each user and the name of one of its authorities, for all authorities of those users.
+     */
+    @Query("select u.id, a.name from User u join u.authorities a where u.id in :ids")
+    List<Object[]> findAuthorityNamesByUserIdIn(@Param("ids") Collection<UUID> ids);
 
     List<User> findAllByAuthoritiesName(String name);
+
+    /**
+     * @return those of the logins that are taken.
+     */
+    @Query("select u.login from User u where u.login in :logins")
+    List<String> findLoginsByLoginIn(@Param("logins") Collection<String> logins);
+
+    /**
+     * @return those of the lowercase emails that are taken, in lowercase.
+     */
+    @Query("select lower(u.email) from User u where lower(u.email) in :emails")
+    List<String> findEmailsByEmailIgnoreCaseIn(@Param("emails") Collection<String> emails);
+
+    /**
+     * @return the login and email of every user, as two-element arrays read through a forward-only cursor fetching
+     * {@value #STREAM_FETCH_SIZE} rows at a time. The stream must be read in a transaction, and closed.
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query("select u.login, u.email from User u")
+    Stream<Object[]> streamAllLoginsAndEmails();
 }
@@ -0,0 +1,78 @@
+package org.benetech.servicenet.repository;
+
+import org.benetech.servicenet.config.UaaProperties;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Fuzzy search of users by login, email, first name and last name.
+ * <p>
+ * With {@code uaa.user-search.trigrams} on PostgreSQL, a user matches when one of those holds a part similar to the
+ * term, as measured by pg_trgm's word similarity, so that {@code doe} finds {@code john.doe@example.com}, and users
+ * are ranked by their most similar one. Each column is searched on its own, nearest first, through the GiST trigram
+ * indexes of {@code 17922760000000_add_user_search_indexes}, which stop after {@code limit} rows, and the four short
+ * lists are merged. Otherwise users containing the term match, in login order, by reading the whole table.
+ */
+@Repository
+public class UserSearchRepository {
+
+    // one nearest-first scan of its GiST index per column, merged by the distance of the closest column
+    private static final String TRIGRAM_SEARCH = "select cast(m.id as varchar) from (" +
+        "(select u.id, u.login, :term <<-> u.login as distance from jhi_user u " +
+        "where u.login <> :excluded and :term <% u.login order by :term <<-> u.login limit :limit) " +
+        "union all (select u.id, u.login, :term <<-> u.email as distance from jhi_user u " +
+        "where u.login <> :excluded and :term <% u.email order by :term <<-> u.email limit :limit) " +
+        "union all (select u.id, u.login, :term <<-> u.first_name as distance from jhi_user u " +
+        "where u.login <> :excluded and :term <% u.first_name order by :term <<-> u.first_name limit :limit) " +
+        "union all (select u.id, u.login, :term <<-> u.last_name as distance from jhi_user u " +
+        "where u.login <> :excluded and :term <% u.last_name order by :term <<-> u.last_name limit :limit) " +
+        ") m group by m.id, m.login order by min(m.distance), m.login limit :limit";
+
+    private static final String LIKE_SEARCH = "select u.id from User u " +
+        "where u.login <> :excluded and (" +
+        "lower(u.login) like :pattern escape '\\' or lower(u.email) like :pattern escape '\\' " +
+        "or lower(u.firstName) like :pattern escape '\\' or lower(u.lastName) like :pattern escape '\\') " +
+        "order by u.login";
+
+    private final EntityManager entityManager;
+
+    private final boolean trigrams;
+
+    public UserSearchRepository(EntityManager entityManager, UaaProperties uaaProperties) {
+        this.entityManager = entityManager;
+        this.trigrams = uaaProperties.getUserSearch().isTrigrams() && entityManager.getEntityManagerFactory()
+            .unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect() instanceof PostgreSQL81Dialect;
+    }
+
+    /**
+     * @param term     the text to search for.
+     * @param excluded the login of a user never returned.
+     * @param limit    the maximum number of users returned.
+     * @return the ids of the matching users, best match first.
+     */
+    public List<UUID> searchIds(String term, String excluded, int limit) {
+        String lowercaseTerm = term.toLowerCase(Locale.ENGLISH);
+        if (!trigrams) {
+            String pattern = "%" + lowercaseTerm.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+            return entityManager.createQuery(LIKE_SEARCH, UUID.class)
+                .setParameter("excluded", excluded)
+                .setParameter("pattern", pattern)
+                .setMaxResults(limit)
+                .getResultList();
+        }
+        @SuppressWarnings("unchecked")
+        List<String> ids = entityManager.createNativeQuery(TRIGRAM_SEARCH)
+            .setParameter("excluded", excluded)
+            .setParameter("term", lowercaseTerm)
+            .setParameter("limit", limit)
+            .getResultList();
+        return ids.stream().map(UUID::fromString).collect(Collectors.toList());
+    }
+}
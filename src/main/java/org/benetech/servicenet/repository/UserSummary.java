@@ -0,0 +1,108 @@
+package org.benetech.servicenet.repository;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * The columns of a {@link org.benetech.servicenet.domain.User} listed to administrators, which Spring Data selects
+ * alone, into this class, instead of loading the entity. Authorities are read separately, see
+ * {@link UserRepository#findAuthorityNamesByUserIdIn(java.util.Collection)}.
+ */
+public class UserSummary {
+
+    private final UUID id;
+
+    private final String login;
+
+    private final String firstName;
+
+    private final String lastName;
+
+    private final String email;
+
+    private final String imageUrl;
+
+    private final boolean activated;
+
+    private final String verificationKey;
+
+    private final String langKey;
+
+    private final String createdBy;
+
+    private final Instant createdDate;
+
+    private final String lastModifiedBy;
+
+    private final Instant lastModifiedDate;
+
+    public UserSummary(UUID id, String login, String firstName, String lastName, String email, String imageUrl,
+        boolean activated, String verificationKey, String langKey, String createdBy, Instant createdDate,
+        String lastModifiedBy, Instant lastModifiedDate) {
+        this.id = id;
+        this.login = login;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+        this.imageUrl = imageUrl;
+        this.activated = activated;
+        this.verificationKey = verificationKey;
+        this.langKey = langKey;
+        this.createdBy = createdBy;
+        this.createdDate = createdDate;
+        this.lastModifiedBy = lastModifiedBy;
+        this.lastModifiedDate = lastModifiedDate;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public boolean isActivated() {
+        return activated;
+    }
+
+    public String getVerificationKey() {
+        return verificationKey;
+    }
+
+    public String getLangKey() {
+        return langKey;
+    }
+
+    public String getCreatedBy() {
+        return createdBy;
+    }
+
+    public Instant getCreatedDate() {
+        return createdDate;
+    }
+
+    public String getLastModifiedBy() {
+        return lastModifiedBy;
+    }
+
+    public Instant getLastModifiedDate() {
+        return lastModifiedDate;
+    }
+}
@@ -0,0 +1,86 @@
+package org.benetech.servicenet.security;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Authorities as bits of a {@code long}, so that checking for one is a map lookup and a bit test instead of a
+ * string comparison with each authority.
+ * <p>
+ * Authority names get their bit the first time they are seen and keep it for the life of the JVM, so bit sets must
+ * not be serialized. There are only a handful of authorities; past 64 the extra ones are kept as names.
+ */
+public final class AuthorityBitSet {
+
+    private static final Map<String, Integer> BITS = new ConcurrentHashMap<>();
+
+    private final long bits;
+
+    private final Set<String> overflow;
+
+    private AuthorityBitSet(long bits, Set<String> overflow) {
+        this.bits = bits;
+        this.overflow = overflow;
+    }
+
+    public static AuthorityBitSet of(Collection<? extends GrantedAuthority> authorities) {
+        long bits = 0;
+        Set<String> overflow = null;
+        for (GrantedAuthority authority : authorities) {
+            String name = authority.getAuthority();
+            int bit = intern(name);
+            if (bit >= 0) {
+                bits |= 1L << bit;
+            } else {
+                if (overflow == null) {
+                    overflow = new HashSet<>();
+                }
+                overflow.add(name);
+            }
+        }
+        return new AuthorityBitSet(bits, overflow);
+    }
+
+    public boolean contains(String authority) {
+        if (authority == null) {
+            return false;
+        }
+        Integer bit = BITS.get(authority);
+        if (bit != null) {
+            // an authority interned after this set was built can't be in it
+            return (bits & (1L << bit)) != 0;
+        }
+        return overflow != null && overflow.contains(authority);
+    }
+
+    private static int intern(String name) {
+        Integer bit = BITS.get(name);
+        if (bit != null) {
+            return bit;
+        }
+        synchronized (BITS) {
+            bit = BITS.get(name);
+            if (bit == null) {
+                if (BITS.size() == Long.SIZE) {
+                    return -1;
+                }
+                bit = BITS.size();
+                BITS.put(name, bit);
+            }
+            return bit;
+        }
+    }
+
+    /**
+     * Implemented by principals and authentications that keep the {@link AuthorityBitSet} of their authorities.
+     */
+    public interface Holder {
+
+        AuthorityBitSet getAuthorityBits();
+    }
+}
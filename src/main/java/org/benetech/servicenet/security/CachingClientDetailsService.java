@@ -0,0 +1,61 @@
+package org.benetech.servicenet.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+
+/**
+ * Serves {@link ClientDetails} from a shared cache, only asking the delegate (the JDBC client store) on a miss.
+ * <p>
+ * The token endpoint looks the same client up several times per grant, so without this every token request
+ * goes to the {@code oauth_client_details} table. Entries are evicted by {@link org.benetech.servicenet.service.ClientService}
+ * whenever a client changes.
+ */
+public class CachingClientDetailsService implements ClientDetailsService {
+
+    public static final String METRIC_NAME = "oauth.client.details.lookups";
+
+    private final Logger log = LoggerFactory.getLogger(CachingClientDetailsService.class);
+
+    private final ClientDetailsService delegate;
+
+    private final Cache cache;
+
+    private final Counter hits;
+
+    private final Counter misses;
+
+    public CachingClientDetailsService(ClientDetailsService delegate, Cache cache, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.hits = Counter.builder(METRIC_NAME)
+            .tag("cache", cache.getName())
+            .tag("result", "hit")
+            .description("Client details lookups served from the cache")
+            .register(meterRegistry);
+        this.misses = Counter.builder(METRIC_NAME)
+            .tag("cache", cache.getName())
+            .tag("result", "miss")
+            .description("Client details lookups loaded from the client store")
+            .register(meterRegistry);
+    }
+
+    @Override
+    public ClientDetails loadClientByClientId(String clientId) throws ClientRegistrationException {
+        ClientDetails cached = cache.get(clientId, ClientDetails.class);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        log.debug("Loading client details for {}", clientId);
+        ClientDetails clientDetails = delegate.loadClientByClientId(clientId);
+        cache.put(clientId, clientDetails);
+        return clientDetails;
+    }
+}
@@ -0,0 +1,234 @@
+package org.benetech.servicenet.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.benetech.servicenet.config.UaaProperties;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link JwtTokenStore} that remembers tokens it has already decoded and verified, keyed by their SHA-256 digest,
+ * until they expire. Both {@code /oauth/check_token} and resource server requests read tokens through this store,
+ * and the same token is usually presented many times during its lifetime.
+ * <p>
+ * Only valid, unexpired access tokens are remembered; refresh tokens are read rarely and always verified. Callers
+ * get copies, as the resource server sets request details on the authentication it is handed.
+ * <p>
+ * With a {@link ClientTokenReuse}, the store also reports the still valid token of a client_credentials grant as
+ * the existing token for that authentication, which the token services then return instead of a new one.
+ * <p>
+ * With {@link TokenRevocations}, every token read is checked for revocation, whether it was remembered or not, and
+ * removing an access token revokes it.
+ */
+public class CachingJwtTokenStore extends JwtTokenStore {
+
+    public static final String METRIC_NAME = "oauth.token.verifications";
+
+    private static final JsonParser JSON_PARSER = JsonParserFactory.create();
+
+    private final KeyRotatingJwtAccessTokenConverter jwtTokenEnhancer;
+
+    private final boolean enabled;
+
+    private final Cache<ByteBuffer, VerifiedToken> verifiedTokens;
+
+    private final Counter cachedVerifications;
+
+    private final Counter fullVerifications;
+
+    private ClientTokenReuse clientTokenReuse;
+
+    private TokenRevocations tokenRevocations;
+
+    public CachingJwtTokenStore(KeyRotatingJwtAccessTokenConverter jwtTokenEnhancer,
+        UaaProperties.TokenVerificationCache properties, MeterRegistry meterRegistry) {
+        super(jwtTokenEnhancer);
+        this.jwtTokenEnhancer = jwtTokenEnhancer;
+        this.enabled = properties.isEnabled();
+        this.verifiedTokens = Caffeine.newBuilder()
+            .maximumSize(properties.getMaxEntries())
+            .expireAfter(new UntilTokenExpiry(TimeUnit.SECONDS.toMillis(properties.getMaxTimeToLiveSeconds())))
+            .build();
+        this.cachedVerifications = Counter.builder(METRIC_NAME)
+            .tag("result", "cached")
+            .description("Token reads answered from the verification cache")
+            .register(meterRegistry);
+        this.fullVerifications = Counter.builder(METRIC_NAME)
+            .tag("result", "computed")
+            .description("Token reads that decoded and verified the token")
+            .register(meterRegistry);
+    }
+
+    public void setClientTokenReuse(ClientTokenReuse clientTokenReuse) {
+        this.clientTokenReuse = clientTokenReuse;
+    }
+
+    public void setTokenRevocations(TokenRevocations tokenRevocations) {
+        this.tokenRevocations = tokenRevocations;
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        if (clientTokenReuse == null) {
+            return super.getAccessToken(authentication);
+        }
+        return clientTokenReuse.find(authentication, this);
+    }
+
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        super.storeAccessToken(token, authentication);
+        if (clientTokenReuse != null) {
+            clientTokenReuse.remember(token, authentication);
+        }
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        super.removeAccessToken(token);
+        if (tokenRevocations != null) {
+            tokenRevocations.revokeToken(token);
+        }
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        VerifiedToken verifiedToken = enabled ? verify(tokenValue) : null;
+        OAuth2AccessToken accessToken = verifiedToken == null ? super.readAccessToken(tokenValue)
+            : new DefaultOAuth2AccessToken(verifiedToken.accessToken);
+        checkNotRevoked(accessToken.getAdditionalInformation());
+        return accessToken;
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        VerifiedToken verifiedToken = enabled ? verify(token) : null;
+        if (verifiedToken == null) {
+            OAuth2Authentication authentication = super.readAuthentication(token);
+            checkNotRevoked(readClaims(token));
+            return authentication;
+        }
+        checkNotRevoked(verifiedToken.accessToken.getAdditionalInformation());
+        OAuth2Authentication authentication = verifiedToken.authentication;
+        return new OAuth2Authentication(authentication.getOAuth2Request(), authentication.getUserAuthentication());
+    }
+
+    private void checkNotRevoked(Map<String, ?> claims) {
+        if (tokenRevocations != null && tokenRevocations.isRevoked(claims)) {
+            throw new InvalidTokenException("Token has been revoked");
+        }
+    }
+
+    /**
+     * @return the verified access token, or {@code null} for a refresh token, which the caller reads itself.
+     */
+    private VerifiedToken verify(String tokenValue) {
+        ByteBuffer key = digest(tokenValue);
+        VerifiedToken verifiedToken = verifiedTokens.getIfPresent(key);
+        if (verifiedToken != null && !verifiedToken.accessToken.isExpired()) {
+            cachedVerifications.increment();
+            return verifiedToken;
+        }
+        if (isRefreshToken(tokenValue)) {
+            return null;
+        }
+        fullVerifications.increment();
+        // the token and its authentication come from the same claims, verified once
+        Map<String, Object> claims = jwtTokenEnhancer.decode(tokenValue);
+        verifiedToken = new VerifiedToken(jwtTokenEnhancer.extractAccessToken(tokenValue, claims),
+            jwtTokenEnhancer.extractAuthentication(claims));
+        if (verifiedToken.accessToken.getExpiration() != null && !verifiedToken.accessToken.isExpired()) {
+            verifiedTokens.put(key, verifiedToken);
+        }
+        return verifiedToken;
+    }
+
+    /**
+     * Tells refresh tokens from access tokens by their "ati" claim, without verifying them.
+     */
+    private static boolean isRefreshToken(String tokenValue) {
+        return readClaims(tokenValue).containsKey(AccessTokenConverter.ATI);
+    }
+
+    /**
+     * @return the claims of the token, without verifying it.
+     */
+    private static Map<String, Object> readClaims(String tokenValue) {
+        String[] parts = tokenValue.split("\\.");
+        if (parts.length != 3) {
+            return Collections.emptyMap();
+        }
+        try {
+            return JSON_PARSER.parseMap(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            // not a JWT, verification will reject it
+            return Collections.emptyMap();
+        }
+    }
+
+    private static ByteBuffer digest(String tokenValue) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(tokenValue.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not compute token digest", e);
+        }
+    }
+
+    private static final class VerifiedToken {
+
+        private final OAuth2AccessToken accessToken;
+
+        private final OAuth2Authentication authentication;
+
+        private VerifiedToken(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+            this.accessToken = accessToken;
+            this.authentication = authentication;
+        }
+    }
+
+    /**
+     * Drops each token when it expires, or after the configured maximum time to live if that comes first.
+     */
+    private static final class UntilTokenExpiry implements Expiry<ByteBuffer, VerifiedToken> {
+
+        private final long maxTimeToLiveMillis;
+
+        private UntilTokenExpiry(long maxTimeToLiveMillis) {
+            this.maxTimeToLiveMillis = maxTimeToLiveMillis;
+        }
+
+        @Override
+        public long expireAfterCreate(ByteBuffer key, VerifiedToken value, long currentTime) {
+            long untilExpiry = value.accessToken.getExpiration().getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, Math.min(untilExpiry, maxTimeToLiveMillis)));
+        }
+
+        @Override
+        public long expireAfterUpdate(ByteBuffer key, VerifiedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(ByteBuffer key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.benetech.servicenet.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.benetech.servicenet.config.UaaProperties;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Remembers client secrets that recently passed the password check, so repeated client_credentials grants
+ * do not pay for a full BCrypt comparison every time.
+ * <p>
+ * Only successful verifications are kept, in a small per-node cache with a short time to live. Entries are keyed
+ * by an HMAC (with a random per-node key) of the stored secret hash and the presented secret: the clear-text
+ * secret is never stored, and rotating a secret changes the stored hash, so old entries stop matching on every node.
+ */
+@Component
+public class ClientSecretVerificationCache {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final String METRIC_NAME = "oauth.client.secret.verifications";
+
+    private final boolean enabled;
+
+    private final Cache<String, Boolean> verifiedSecrets;
+
+    private final SecretKeySpec hmacKey;
+
+    private final Counter cachedVerifications;
+
+    private final Counter fullVerifications;
+
+    public ClientSecretVerificationCache(UaaProperties uaaProperties, MeterRegistry meterRegistry) {
+        UaaProperties.ClientSecretCache properties = uaaProperties.getClientSecretCache();
+        this.enabled = properties.isEnabled();
+        this.verifiedSecrets = Caffeine.newBuilder()
+            .maximumSize(properties.getMaxEntries())
+            .expireAfterWrite(Duration.ofSeconds(properties.getTimeToLiveSeconds()))
+            .build();
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.hmacKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+        this.cachedVerifications = Counter.builder(METRIC_NAME)
+            .tag("result", "cached")
+            .description("Client secret checks answered from the verification cache")
+            .register(meterRegistry);
+        this.fullVerifications = Counter.builder(METRIC_NAME)
+            .tag("result", "computed")
+            .description("Client secret checks that ran the password encoder")
+            .register(meterRegistry);
+    }
+
+    /**
+     * Wraps the password encoder used for client authentication with this cache.
+     *
+     * @param passwordEncoder the encoder client secrets are stored with.
+     * @return an encoder that consults this cache before running {@code passwordEncoder.matches}.
+     */
+    public PasswordEncoder wrap(PasswordEncoder passwordEncoder) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return passwordEncoder.encode(rawPassword);
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return ClientSecretVerificationCache.this.matches(rawPassword, encodedPassword, passwordEncoder);
+            }
+
+            @Override
+            public boolean upgradeEncoding(String encodedPassword) {
+                return passwordEncoder.upgradeEncoding(encodedPassword);
+            }
+        };
+    }
+
+    /**
+     * Forgets every remembered verification on this node.
+     */
+    public void clear() {
+        verifiedSecrets.invalidateAll();
+    }
+
+    private boolean matches(CharSequence rawSecret, String encodedSecret, PasswordEncoder passwordEncoder) {
+        if (!enabled || rawSecret == null || encodedSecret == null) {
+            return passwordEncoder.matches(rawSecret, encodedSecret);
+        }
+        String key = digest(encodedSecret, rawSecret);
+        if (verifiedSecrets.getIfPresent(key) != null) {
+            cachedVerifications.increment();
+            return true;
+        }
+        fullVerifications.increment();
+        boolean matches = passwordEncoder.matches(rawSecret, encodedSecret);
+        if (matches) {
+            verifiedSecrets.put(key, Boolean.TRUE);
+        }
+        return matches;
+    }
+
+    private String digest(String encodedSecret, CharSequence rawSecret) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(hmacKey);
+            mac.update(encodedSecret.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(rawSecret.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not compute client secret digest", e);
+        }
+    }
+}
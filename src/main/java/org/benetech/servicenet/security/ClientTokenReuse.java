@@ -0,0 +1,160 @@
+package org.benetech.servicenet.security;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.query.Predicates;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Hands out an access token already issued by a client_credentials grant again, instead of signing a new one,
+ * while it is still valid for at least the client's reuse window.
+ * <p>
+ * Reuse is opt-in per client: {@link org.benetech.servicenet.service.ClientService} stores the window in the
+ * client's additional information as {@value #TOKEN_REUSE_SECONDS}, and {@link TokenReuseRequestFactory} copies it
+ * into the token request. Tokens are shared between nodes through a Hazelcast map, keyed by client, scope,
+ * authorities and resource ids; each entry lives until its token has less than the window left.
+ */
+@Component
+public class ClientTokenReuse {
+
+    public static final String MAP_NAME = "oauthReusableTokens";
+
+    public static final String TOKEN_REUSE_SECONDS = "token_reuse_seconds";
+
+    private static final String METRIC_NAME = "oauth.client.token.reuse";
+
+    private final IMap<String, ReusableToken> tokens;
+
+    private final Counter reused;
+
+    private final Counter missed;
+
+    public ClientTokenReuse(HazelcastInstance hazelcastInstance, MeterRegistry meterRegistry) {
+        this.tokens = hazelcastInstance.getMap(MAP_NAME);
+        this.reused = Counter.builder(METRIC_NAME)
+            .tag("result", "reused")
+            .description("client_credentials grants answered with an already issued token")
+            .register(meterRegistry);
+        this.missed = Counter.builder(METRIC_NAME)
+            .tag("result", "issued")
+            .description("client_credentials grants with a reuse window that had to issue a new token")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @param authentication the authentication a token is requested for.
+     * @param tokenStore     the store that reads the remembered token back.
+     * @return a token issued earlier for the same client, scope and authorities that is still valid for at least the
+     * reuse window, or {@code null}.
+     */
+    public OAuth2AccessToken find(OAuth2Authentication authentication, TokenStore tokenStore) {
+        int reuseSeconds = getReuseSeconds(authentication);
+        if (reuseSeconds <= 0) {
+            return null;
+        }
+        ReusableToken reusableToken = tokens.get(key(authentication.getOAuth2Request()));
+        if (reusableToken != null) {
+            try {
+                OAuth2AccessToken accessToken = tokenStore.readAccessToken(reusableToken.getTokenValue());
+                if (accessToken.getExpiration() != null && accessToken.getExpiresIn() >= reuseSeconds) {
+                    reused.increment();
+                    return accessToken;
+                }
+            } catch (InvalidTokenException e) {
+                // signed with a key that has been rotated out since, issue a new one
+            }
+        }
+        missed.increment();
+        return null;
+    }
+
+    /**
+     * Remembers a token issued for a client with a reuse window, until it has less than the window left.
+     */
+    public void remember(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        int reuseSeconds = getReuseSeconds(authentication);
+        if (reuseSeconds <= 0 || accessToken.getExpiration() == null) {
+            return;
+        }
+        long timeToLiveSeconds = accessToken.getExpiresIn() - reuseSeconds;
+        if (timeToLiveSeconds > 0) {
+            OAuth2Request request = authentication.getOAuth2Request();
+            tokens.putIfAbsent(key(request), new ReusableToken(request.getClientId(), accessToken.getValue()),
+                timeToLiveSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Forgets every token remembered for the client, on all nodes.
+     */
+    public void forgetClient(String clientId) {
+        tokens.removeAll(Predicates.equal("clientId", clientId));
+    }
+
+    private static int getReuseSeconds(OAuth2Authentication authentication) {
+        if (!authentication.isClientOnly()) {
+            return 0;
+        }
+        Object reuseSeconds = authentication.getOAuth2Request().getExtensions().get(TOKEN_REUSE_SECONDS);
+        return reuseSeconds instanceof Number ? ((Number) reuseSeconds).intValue() : 0;
+    }
+
+    private static String key(OAuth2Request request) {
+        String authorities = request.getAuthorities().stream().map(GrantedAuthority::getAuthority)
+            .collect(Collectors.toCollection(TreeSet::new)).toString();
+        String content = sorted(request.getScope()) + "|" + authorities + "|" + sorted(request.getResourceIds());
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return request.getClientId() + ":" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not compute token reuse key", e);
+        }
+    }
+
+    private static String sorted(Collection<String> values) {
+        return values == null ? "[]" : new TreeSet<>(values).toString();
+    }
+
+    /**
+     * A remembered token, with its client so that all of a client's tokens can be forgotten at once.
+     */
+    public static class ReusableToken implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String clientId;
+
+        private final String tokenValue;
+
+        public ReusableToken(String clientId, String tokenValue) {
+            this.clientId = clientId;
+            this.tokenValue = tokenValue;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public String getTokenValue() {
+            return tokenValue;
+        }
+    }
+}
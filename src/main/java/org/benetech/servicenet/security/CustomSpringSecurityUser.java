@@ -5,14 +5,24 @@ import java.util.UUID;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 
-public class CustomSpringSecurityUser extends User {
+public class CustomSpringSecurityUser extends User implements AuthorityBitSet.Holder {
 
     private UUID id;
 
+    private long securityVersion;
+
+    private transient volatile AuthorityBitSet authorityBits;
+
     public CustomSpringSecurityUser(String username, String password,
         Collection<? extends GrantedAuthority> authorities, UUID id) {
+        this(username, password, authorities, id, 0);
+    }
+
+    public CustomSpringSecurityUser(String username, String password,
+        Collection<? extends GrantedAuthority> authorities, UUID id, long securityVersion) {
         super(username, password, authorities);
         this.id = id;
+        this.securityVersion = securityVersion;
     }
 
     public UUID getId() {
@@ -22,4 +32,22 @@ public class CustomSpringSecurityUser extends User {
     public void setId(UUID id) {
         this.id = id;
     }
+
+    public long getSecurityVersion() {
+        return securityVersion;
+    }
+
+    public void setSecurityVersion(long securityVersion) {
+        this.securityVersion = securityVersion;
+    }
+
+    @Override
+    public AuthorityBitSet getAuthorityBits() {
+        AuthorityBitSet bits = authorityBits;
+        if (bits == null) {
+            bits = AuthorityBitSet.of(getAuthorities());
+            authorityBits = bits;
+        }
+        return bits;
+    }
 }
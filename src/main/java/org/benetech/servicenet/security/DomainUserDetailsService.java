@@ -1,6 +1,7 @@
 package org.benetech.servicenet.security;
 
-import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.repository.UserCache;
+import org.benetech.servicenet.repository.UserCredentials;
 import org.benetech.servicenet.repository.UserRepository;
 import org.hibernate.validator.internal.constraintvalidators.hv.EmailValidator;
 import org.slf4j.Logger;
@@ -8,6 +9,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Component;
@@ -17,47 +19,77 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 /**
- * Authenticate a user from the database.
+ * Authenticate a user from the database, reading only its {@link UserCredentials}.
+ * <p>
+ * Logins and emails that {@link KnownPrincipals} knows don't exist are rejected without querying the database.
+ * <p>
+ * Also stores the new hash when a successful login re-hashes a password made with an outdated algorithm or cost.
  */
 @Component("userDetailsService")
-public class DomainUserDetailsService implements UserDetailsService {
+public class DomainUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final Logger log = LoggerFactory.getLogger(DomainUserDetailsService.class);
 
     private final UserRepository userRepository;
 
-    public DomainUserDetailsService(UserRepository userRepository) {
+    private final UserCache userCache;
+
+    private final KnownPrincipals knownPrincipals;
+
+    public DomainUserDetailsService(UserRepository userRepository, UserCache userCache, KnownPrincipals knownPrincipals) {
         this.userRepository = userRepository;
+        this.userCache = userCache;
+        this.knownPrincipals = knownPrincipals;
     }
 
     @Override
-    @Transactional
+    @Transactional(readOnly = true)
     public UserDetails loadUserByUsername(final String login) {
         log.debug("Authenticating {}", login);
 
         if (new EmailValidator().isValid(login, null)) {
-            return userRepository.findOneWithAuthoritiesByEmailIgnoreCase(login)
+            if (!knownPrincipals.mightBeEmail(login)) {
+                throw new UsernameNotFoundException("User with email " + login + " was not found in the database");
+            }
+            return userCache.findCredentialsByEmailIgnoreCase(login)
                 .map(user -> createSpringSecurityUser(login, user))
                 .orElseThrow(() -> new UsernameNotFoundException("User with email " + login + " was not found in the database"));
         }
 
         String lowercaseLogin = login.toLowerCase(Locale.ENGLISH);
-        return userRepository.findOneWithAuthoritiesByLogin(lowercaseLogin)
+        if (!knownPrincipals.mightBeLogin(lowercaseLogin)) {
+            throw new UsernameNotFoundException("User " + lowercaseLogin + " was not found in the database");
+        }
+        return userCache.findCredentialsByLogin(lowercaseLogin)
             .map(user -> createSpringSecurityUser(lowercaseLogin, user))
             .orElseThrow(() -> new UsernameNotFoundException("User " + lowercaseLogin + " was not found in the database"));
 
     }
 
-    private CustomSpringSecurityUser createSpringSecurityUser(String lowercaseLogin, User user) {
-        if (!user.getActivated()) {
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        log.debug("Upgrading password hash of {}", userDetails.getUsername());
+        userRepository.findOneByLogin(userDetails.getUsername()).ifPresent(user -> user.setPassword(newPassword));
+        if (userDetails instanceof CustomSpringSecurityUser) {
+            CustomSpringSecurityUser user = (CustomSpringSecurityUser) userDetails;
+            return new CustomSpringSecurityUser(user.getUsername(), newPassword, user.getAuthorities(), user.getId(),
+                user.getSecurityVersion());
+        }
+        return userDetails;
+    }
+
+    private CustomSpringSecurityUser createSpringSecurityUser(String lowercaseLogin, UserCredentials credentials) {
+        if (!credentials.isActivated()) {
             throw new UserNotActivatedException("User " + lowercaseLogin + " was not activated");
         }
-        List<GrantedAuthority> grantedAuthorities = user.getAuthorities().stream()
-            .map(authority -> new SimpleGrantedAuthority(authority.getName()))
+        List<GrantedAuthority> grantedAuthorities = credentials.getAuthorities().stream()
+            .map(SimpleGrantedAuthority::new)
             .collect(Collectors.toList());
-        return new CustomSpringSecurityUser(user.getLogin(),
-            user.getPassword(),
+        return new CustomSpringSecurityUser(credentials.getLogin(),
+            credentials.getPassword(),
             grantedAuthorities,
-            user.getId());
+            credentials.getId(),
+            credentials.getSecurityVersion());
     }
 }
@@ -0,0 +1,119 @@
+package org.benetech.servicenet.security;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A key pair that signs JWTs with one JWS algorithm, identified in the token header by its {@code kid}.
+ */
+public class JwtSigningKey {
+
+    public static final String RS256 = "RS256";
+
+    public static final String ES256 = "ES256";
+
+    private static final int P256_FIELD_SIZE = 256;
+
+    private final String id;
+
+    private final String algorithm;
+
+    private final KeyPair keyPair;
+
+    private final String jcaAlgorithm;
+
+    public JwtSigningKey(String id, String algorithm, KeyPair keyPair) {
+        this.id = id;
+        this.algorithm = algorithm;
+        this.keyPair = keyPair;
+        PublicKey publicKey = keyPair.getPublic();
+        if (RS256.equals(algorithm) && publicKey instanceof RSAPublicKey) {
+            this.jcaAlgorithm = "SHA256withRSA";
+        } else if (ES256.equals(algorithm) && publicKey instanceof ECPublicKey
+            && ((ECPublicKey) publicKey).getParams().getCurve().getField().getFieldSize() == P256_FIELD_SIZE) {
+            // JWS wants the raw R || S form rather than the DER sequence
+            this.jcaAlgorithm = "SHA256withECDSAinP1363Format";
+        } else {
+            throw new IllegalArgumentException("Key " + id + " is a " + publicKey.getAlgorithm() + " key, which cannot sign " + algorithm);
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public PublicKey getPublicKey() {
+        return keyPair.getPublic();
+    }
+
+    public byte[] sign(byte[] content) {
+        try {
+            Signature signature = Signature.getInstance(jcaAlgorithm);
+            signature.initSign(keyPair.getPrivate());
+            signature.update(content);
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign with key " + id, e);
+        }
+    }
+
+    public boolean verify(byte[] content, byte[] signatureBytes) {
+        try {
+            Signature signature = Signature.getInstance(jcaAlgorithm);
+            signature.initVerify(keyPair.getPublic());
+            signature.update(content);
+            return signature.verify(signatureBytes);
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the public key as a JSON Web Key (RFC 7517).
+     */
+    public Map<String, Object> toJwk() {
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        if (keyPair.getPublic() instanceof RSAPublicKey) {
+            RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+            jwk.put("kty", "RSA");
+            jwk.put("n", base64Url(publicKey.getModulus(), 0));
+            jwk.put("e", base64Url(publicKey.getPublicExponent(), 0));
+        } else {
+            ECPublicKey publicKey = (ECPublicKey) keyPair.getPublic();
+            jwk.put("kty", "EC");
+            jwk.put("crv", "P-256");
+            jwk.put("x", base64Url(publicKey.getW().getAffineX(), P256_FIELD_SIZE / 8));
+            jwk.put("y", base64Url(publicKey.getW().getAffineY(), P256_FIELD_SIZE / 8));
+        }
+        jwk.put("kid", id);
+        jwk.put("use", "sig");
+        jwk.put("alg", algorithm);
+        return jwk;
+    }
+
+    private static String base64Url(BigInteger value, int length) {
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        if (bytes.length < length) {
+            byte[] padded = new byte[length];
+            System.arraycopy(bytes, 0, padded, length - bytes.length, bytes.length);
+            bytes = padded;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -0,0 +1,119 @@
+package org.benetech.servicenet.security;
+
+import org.benetech.servicenet.config.UaaProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The keys JWTs are signed and verified with: the key-store key, identified by its alias, plus the keys in
+ * {@code uaa.signing.keys}. One of them, {@code uaa.signing.active-key-id}, signs new tokens; all of them are
+ * accepted on incoming tokens, which is what lets keys be rotated without downtime.
+ */
+@Component
+public class JwtSigningKeys {
+
+    private final Map<String, JwtSigningKey> keys = new LinkedHashMap<>();
+
+    private final JwtSigningKey defaultKey;
+
+    private final JwtSigningKey activeKey;
+
+    @Autowired
+    public JwtSigningKeys(UaaProperties uaaProperties) {
+        UaaProperties.KeyStore keyStore = uaaProperties.getKeyStore();
+        List<JwtSigningKey> signingKeys = new ArrayList<>();
+        signingKeys.add(new JwtSigningKey(keyStore.getAlias(), JwtSigningKey.RS256,
+            loadKeyPair(keyStore.getName(), keyStore.getPassword(), keyStore.getAlias())));
+        for (UaaProperties.Signing.Key key : uaaProperties.getSigning().getKeys()) {
+            String name = StringUtils.hasText(key.getKeyStoreName()) ? key.getKeyStoreName() : keyStore.getName();
+            String password = key.getKeyStorePassword() != null ? key.getKeyStorePassword() : keyStore.getPassword();
+            signingKeys.add(new JwtSigningKey(key.getId(), key.getAlgorithm(), loadKeyPair(name, password, key.getAlias())));
+        }
+        String activeKeyId = uaaProperties.getSigning().getActiveKeyId();
+        this.defaultKey = signingKeys.get(0);
+        signingKeys.forEach(this::add);
+        this.activeKey = StringUtils.hasText(activeKeyId) ? getRequiredKey(activeKeyId) : defaultKey;
+    }
+
+    /**
+     * @param keys        the keys, the first one is used for tokens without a {@code kid}.
+     * @param activeKeyId the id of the key that signs new tokens.
+     */
+    public JwtSigningKeys(List<JwtSigningKey> keys, String activeKeyId) {
+        this.defaultKey = keys.get(0);
+        keys.forEach(this::add);
+        this.activeKey = getRequiredKey(activeKeyId);
+    }
+
+    /**
+     * @return the key that signs new tokens.
+     */
+    public JwtSigningKey getActiveKey() {
+        return activeKey;
+    }
+
+    /**
+     * @param id the {@code kid} of a token, or {@code null} for tokens signed before keys had ids.
+     * @return the key, or {@code null} if there is no such key.
+     */
+    public JwtSigningKey getKey(String id) {
+        return id == null ? defaultKey : keys.get(id);
+    }
+
+    public Collection<JwtSigningKey> getKeys() {
+        return Collections.unmodifiableCollection(keys.values());
+    }
+
+    /**
+     * @return every key as a JSON Web Key Set (RFC 7517).
+     */
+    public Map<String, Object> toJwkSet() {
+        List<Map<String, Object>> jwks = new ArrayList<>();
+        keys.values().forEach(key -> jwks.add(key.toJwk()));
+        return Collections.singletonMap("keys", jwks);
+    }
+
+    private void add(JwtSigningKey key) {
+        if (!StringUtils.hasText(key.getId()) || keys.putIfAbsent(key.getId(), key) != null) {
+            throw new IllegalStateException("JWT signing key ids must be set and unique, got: " + key.getId());
+        }
+    }
+
+    private JwtSigningKey getRequiredKey(String id) {
+        JwtSigningKey key = keys.get(id);
+        if (key == null) {
+            throw new IllegalStateException("The active JWT signing key " + id + " is not configured");
+        }
+        return key;
+    }
+
+    private static KeyPair loadKeyPair(String name, String password, String alias) {
+        try (InputStream inputStream = new ClassPathResource(name).getInputStream()) {
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(inputStream, password.toCharArray());
+            Key key = keyStore.getKey(alias, password.toCharArray());
+            if (!(key instanceof PrivateKey) || keyStore.getCertificate(alias) == null) {
+                throw new IllegalStateException("No key pair " + alias + " in keystore " + name);
+            }
+            return new KeyPair(keyStore.getCertificate(alias).getPublicKey(), (PrivateKey) key);
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot load key " + alias + " from keystore " + name, e);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.benetech.servicenet.security;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.JsonParser;
+import org.springframework.security.oauth2.common.util.JsonParserFactory;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JWT converter that signs with the active key of {@link JwtSigningKeys} and names it in the {@code kid} header,
+ * and verifies incoming tokens with whichever configured key their {@code kid} names. Tokens without a
+ * {@code kid} were signed with the key-store key.
+ * <p>
+ * This replaces the single signer and verifier of {@link JwtAccessTokenConverter}, which can neither write a
+ * {@code kid} nor sign with an EC key.
+ */
+public class KeyRotatingJwtAccessTokenConverter extends JwtAccessTokenConverter {
+
+    private static final String KEY_ID = "kid";
+
+    private static final String ALGORITHM = "alg";
+
+    private final JsonParser jsonParser = JsonParserFactory.create();
+
+    private final JwtSigningKeys signingKeys;
+
+    public KeyRotatingJwtAccessTokenConverter(JwtSigningKeys signingKeys) {
+        this.signingKeys = signingKeys;
+    }
+
+    /**
+     * @return the active public key, in the form {@code /oauth/token_key} has always served.
+     */
+    @Override
+    public Map<String, String> getKey() {
+        JwtSigningKey activeKey = signingKeys.getActiveKey();
+        Map<String, String> result = new LinkedHashMap<>();
+        result.put("alg", activeKey.getPublicKey() instanceof RSAPublicKey ? "SHA256withRSA" : "SHA256withECDSA");
+        result.put("value", "-----BEGIN PUBLIC KEY-----\n"
+            + Base64.getEncoder().encodeToString(activeKey.getPublicKey().getEncoded()) + "\n-----END PUBLIC KEY-----");
+        return result;
+    }
+
+    /**
+     * @return always {@code true}, only asymmetric keys are used.
+     */
+    @Override
+    public boolean isPublic() {
+        return true;
+    }
+
+    @Override
+    protected String encode(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        String content;
+        try {
+            content = jsonParser.formatMap(getAccessTokenConverter().convertAccessToken(accessToken, authentication));
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot convert access token to JSON", e);
+        }
+        JwtSigningKey key = signingKeys.getActiveKey();
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put(ALGORITHM, key.getAlgorithm());
+        header.put("typ", "JWT");
+        header.put(KEY_ID, key.getId());
+        String signingInput = base64Url(jsonParser.formatMap(header).getBytes(StandardCharsets.UTF_8))
+            + "." + base64Url(content.getBytes(StandardCharsets.UTF_8));
+        return signingInput + "." + base64Url(key.sign(signingInput.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Decodes the token and verifies its signature and claims, which {@link CachingJwtTokenStore} does once per
+     * token before extracting both the access token and the authentication from the claims.
+     *
+     * @return the claims of the token.
+     * @throws InvalidTokenException if the token is malformed, or not signed with one of the configured keys.
+     */
+    @Override
+    public Map<String, Object> decode(String token) {
+        int headerEnd = token.indexOf('.');
+        int claimsEnd = token.indexOf('.', headerEnd + 1);
+        if (headerEnd < 0 || claimsEnd < 0 || token.indexOf('.', claimsEnd + 1) >= 0) {
+            throw new InvalidTokenException("Cannot convert access token to JSON");
+        }
+        try {
+            Map<String, Object> header = jsonParser.parseMap(base64UrlDecode(token.substring(0, headerEnd)));
+            Object keyId = header.get(KEY_ID);
+            JwtSigningKey key = signingKeys.getKey(keyId == null ? null : keyId.toString());
+            if (key == null || !key.getAlgorithm().equals(header.get(ALGORITHM))) {
+                throw new InvalidTokenException("Token is not signed with a known key");
+            }
+            byte[] signingInput = token.substring(0, claimsEnd).getBytes(StandardCharsets.UTF_8);
+            if (!key.verify(signingInput, Base64.getUrlDecoder().decode(token.substring(claimsEnd + 1)))) {
+                throw new InvalidTokenException("Token signature does not match");
+            }
+            Map<String, Object> claims = jsonParser.parseMap(base64UrlDecode(token.substring(headerEnd + 1, claimsEnd)));
+            if (claims.get(EXP) instanceof Integer) {
+                claims.put(EXP, ((Integer) claims.get(EXP)).longValue());
+            }
+            getJwtClaimsSetVerifier().verify(claims);
+            return claims;
+        } catch (InvalidTokenException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new InvalidTokenException("Cannot convert access token to JSON", e);
+        }
+    }
+
+    private static String base64Url(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String base64UrlDecode(String value) {
+        return new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,182 @@
+package org.benetech.servicenet.security;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.benetech.servicenet.config.UaaProperties;
+import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter of every login and email, so that {@link DomainUserDetailsService} can reject unknown ones, as sent
+ * by credential stuffing, without querying the database.
+ * <p>
+ * The filter is built from the database in the background once the application is ready, and rebuilt every hour to
+ * drop deleted users. New logins and emails are added by {@link KnownPrincipalsListener} as users are saved, and
+ * published on a Hazelcast topic so the other nodes add them too. Until the first build everything is looked up.
+ */
+@Component
+public class KnownPrincipals {
+
+    public static final String TOPIC_NAME = "knownPrincipals";
+
+    private static final String METRIC_NAME = "oauth.user.lookups";
+
+    private static final long REBUILD_INTERVAL_MILLIS = 60 * 60 * 1000L;
+
+    //additions kept for the next rebuild, whose query may not see users from transactions still running
+    private static final long RECENT_ADDITIONS_MILLIS = 10 * 60 * 1000L;
+
+    private final Logger log = LoggerFactory.getLogger(KnownPrincipals.class);
+
+    private final UserRepository userRepository;
+
+    private final ITopic<String> additions;
+
+    private final UaaProperties.KnownPrincipals properties;
+
+    private final Counter filtered;
+
+    private final Counter queried;
+
+    private final Map<String, Long> recentAdditions = new ConcurrentHashMap<>();
+
+    private volatile BloomFilter filter;
+
+    private volatile BloomFilter pendingFilter;
+
+    public KnownPrincipals(@Lazy UserRepository userRepository, HazelcastInstance hazelcastInstance,
+        UaaProperties uaaProperties, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.additions = hazelcastInstance.getTopic(TOPIC_NAME);
+        this.properties = uaaProperties.getKnownPrincipals();
+        this.filtered = Counter.builder(METRIC_NAME)
+            .tag("result", "filtered")
+            .description("Logins rejected as unknown without querying the database")
+            .register(meterRegistry);
+        this.queried = Counter.builder(METRIC_NAME)
+            .tag("result", "queried")
+            .description("Logins looked up in the database")
+            .register(meterRegistry);
+        additions.addMessageListener(message -> remember(message.getMessageObject()));
+    }
+
+    /**
+     * @param login a lowercase login.
+     * @return {@code false} if no user has that login, {@code true} if one might.
+     */
+    public boolean mightBeLogin(String login) {
+        return mightContain(loginKey(login));
+    }
+
+    /**
+     * @return {@code false} if no user has that email, {@code true} if one might.
+     */
+    public boolean mightBeEmail(String email) {
+        return mightContain(emailKey(email));
+    }
+
+    /**
+     * Adds the user's login and email, on all nodes.
+     */
+    public void add(User user) {
+        if (user.getLogin() != null) {
+            add(loginKey(user.getLogin()));
+        }
+        if (user.getEmail() != null) {
+            add(emailKey(user.getEmail()));
+        }
+    }
+
+    /**
+     * Rebuilds the filter from the users in the database. Logins and emails added meanwhile go into both the old
+     * and the new filter.
+     * <p>
+     * Runs on the task executor, so that reading every user doesn't hold up startup, and streams them so that only
+     * the filter is kept in memory.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelay = REBUILD_INTERVAL_MILLIS, fixedDelay = REBUILD_INTERVAL_MILLIS)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        BloomFilter rebuilt = new BloomFilter(properties.getExpectedPrincipals(), properties.getFalsePositiveProbability());
+        pendingFilter = rebuilt;
+        int users = 0;
+        try (Stream<Object[]> loginsAndEmails = userRepository.streamAllLoginsAndEmails()) {
+            Iterator<Object[]> rows = loginsAndEmails.iterator();
+            while (rows.hasNext()) {
+                Object[] loginAndEmail = rows.next();
+                rebuilt.put(loginKey((String) loginAndEmail[0]));
+                if (loginAndEmail[1] != null) {
+                    rebuilt.put(emailKey((String) loginAndEmail[1]));
+                }
+                users++;
+            }
+        }
+        long cutoff = System.currentTimeMillis() - RECENT_ADDITIONS_MILLIS;
+        recentAdditions.values().removeIf(addedAt -> addedAt < cutoff);
+        recentAdditions.keySet().forEach(rebuilt::put);
+        filter = rebuilt;
+        pendingFilter = null;
+        log.debug("Rebuilt the known principals filter with {} users", users);
+    }
+
+    private boolean mightContain(String key) {
+        BloomFilter current = filter;
+        if (current != null && !current.mightContain(key)) {
+            filtered.increment();
+            return false;
+        }
+        queried.increment();
+        return true;
+    }
+
+    private void add(String key) {
+        remember(key);
+        additions.publish(key);
+    }
+
+    private void remember(String key) {
+        recentAdditions.put(key, System.currentTimeMillis());
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(key);
+        }
+        BloomFilter pending = pendingFilter;
+        if (pending != null) {
+            pending.put(key);
+        }
+        BloomFilter latest = filter;
+        if (latest != null && latest != current) {
+            latest.put(key);
+        }
+    }
+
+    private static String loginKey(String login) {
+        return "login:" + login;
+    }
+
+    private static String emailKey(String email) {
+        return "email:" + email.toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,28 @@
+package org.benetech.servicenet.security;
+
+import org.benetech.servicenet.domain.User;
+
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
+
+/**
+ * Entity listener adding the login and email of every saved {@link User} to {@link KnownPrincipals}, whichever
+ * way the user was saved. Hibernate gets it from the Spring context, with its dependencies injected.
+ * <p>
+ * New users are added as soon as they are persisted rather than once inserted, since ids are assigned up front and
+ * the insert waits for the flush that a lookup of the user would only trigger after consulting the filter.
+ */
+public class KnownPrincipalsListener {
+
+    private final KnownPrincipals knownPrincipals;
+
+    public KnownPrincipalsListener(KnownPrincipals knownPrincipals) {
+        this.knownPrincipals = knownPrincipals;
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void userSaved(User user) {
+        knownPrincipals.add(user);
+    }
+}
@@ -0,0 +1,74 @@
+package org.benetech.servicenet.security;
+
+import io.github.jhipster.security.RandomUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.benetech.servicenet.config.UaaProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long one password hash takes on this node once the application is up, logs it against the
+ * configured latency budget and exports it as {@code password.hashing.calibration}.
+ * <p>
+ * For BCrypt the log also names the highest cost that fits the budget, which is what
+ * {@code uaa.password-hashing.strength} should be tuned to; existing hashes follow on the next login.
+ */
+@Component
+public class PasswordHashingCalibration {
+
+    private static final int SAMPLES = 3;
+
+    private final Logger log = LoggerFactory.getLogger(PasswordHashingCalibration.class);
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final UaaProperties uaaProperties;
+
+    private volatile double hashMillis = Double.NaN;
+
+    public PasswordHashingCalibration(PasswordEncoder passwordEncoder, UaaProperties uaaProperties, MeterRegistry meterRegistry) {
+        this.passwordEncoder = passwordEncoder;
+        this.uaaProperties = uaaProperties;
+        TimeGauge.builder("password.hashing.calibration", this, TimeUnit.MILLISECONDS, PasswordHashingCalibration::getHashMillis)
+            .description("Time one password hash took on this node at startup")
+            .register(meterRegistry);
+    }
+
+    public double getHashMillis() {
+        return hashMillis;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void calibrate() {
+        String password = RandomUtil.generatePassword();
+        long fastest = Long.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            passwordEncoder.encode(password);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        hashMillis = fastest / 1_000_000.0;
+
+        UaaProperties.PasswordHashing passwordHashing = uaaProperties.getPasswordHashing();
+        int budget = passwordHashing.getLatencyBudgetMillis();
+        if (UpgradingPasswordEncoder.BCRYPT.equals(passwordHashing.getAlgorithm())) {
+            // every extra BCrypt cost step doubles the work
+            int recommended = passwordHashing.getStrength() + (int) Math.floor(Math.log(budget / hashMillis) / Math.log(2));
+            recommended = Math.max(4, Math.min(31, recommended));
+            log.info("Password hashing with BCrypt cost {} takes {} ms on this node, the highest cost within the {} ms budget is {}",
+                passwordHashing.getStrength(), Math.round(hashMillis), budget, recommended);
+        } else {
+            log.info("Password hashing with {} takes {} ms on this node, the budget is {} ms",
+                passwordHashing.getAlgorithm(), Math.round(hashMillis), budget);
+        }
+    }
+}
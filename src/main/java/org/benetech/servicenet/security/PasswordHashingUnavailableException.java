@@ -0,0 +1,36 @@
+package org.benetech.servicenet.security;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+
+/**
+ * Thrown when the password hashing pool is saturated and a hash or password check cannot even be queued.
+ * <p>
+ * It is an {@link OAuth2Exception} so the token endpoint answers with the standard
+ * {@code temporarily_unavailable} error instead of a server error.
+ */
+public class PasswordHashingUnavailableException extends OAuth2Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int retryAfterSeconds;
+
+    public PasswordHashingUnavailableException(int retryAfterSeconds) {
+        super("Too many concurrent password checks, please retry later");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    @Override
+    public String getOAuth2ErrorCode() {
+        return "temporarily_unavailable";
+    }
+
+    @Override
+    public int getHttpErrorCode() {
+        return HttpStatus.SERVICE_UNAVAILABLE.value();
+    }
+}
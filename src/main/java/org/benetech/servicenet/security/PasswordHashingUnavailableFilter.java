@@ -0,0 +1,39 @@
+package org.benetech.servicenet.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Turns a {@link PasswordHashingUnavailableException} raised by client authentication on the token endpoint into
+ * a {@code 503 Service Unavailable} with a {@code Retry-After} header.
+ * <p>
+ * Client credentials are checked in the security filter chain, before any controller advice can see the error.
+ */
+public class PasswordHashingUnavailableFilter extends OncePerRequestFilter {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        try {
+            filterChain.doFilter(request, response);
+        } catch (PasswordHashingUnavailableException e) {
+            if (response.isCommitted()) {
+                throw e;
+            }
+            response.setStatus(e.getHttpErrorCode());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), e);
+        }
+    }
+}
@@ -5,9 +5,9 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
 
 import java.util.Optional;
-import java.util.stream.Stream;
 
 /**
  * Utility class for Spring Security.
@@ -47,8 +47,7 @@ public final class SecurityUtils {
      */
     public static boolean isAuthenticated() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        return authentication != null &&
-            getAuthorities(authentication).noneMatch(AuthoritiesConstants.ANONYMOUS::equals);
+        return authentication != null && !hasAuthority(authentication, AuthoritiesConstants.ANONYMOUS);
     }
 
     /**
@@ -61,13 +60,37 @@ public final class SecurityUtils {
      */
     public static boolean isCurrentUserInRole(String authority) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        return authentication != null &&
-            getAuthorities(authentication).anyMatch(authority::equals);
+        return authentication != null && hasAuthority(authentication, authority);
     }
 
-    private static Stream<String> getAuthorities(Authentication authentication) {
+    private static boolean hasAuthority(Authentication authentication, String authority) {
+        AuthorityBitSet authorityBits = getAuthorityBits(authentication);
+        if (authorityBits != null) {
+            return authorityBits.contains(authority);
+        }
         return authentication.getAuthorities().stream()
-            .map(GrantedAuthority::getAuthority);
+            .map(GrantedAuthority::getAuthority)
+            .anyMatch(authority::equals);
+    }
+
+    /**
+     * @return the bit set kept by the user authentication read from a token, or by the user logged in, or
+     * {@code null} if neither keeps one.
+     */
+    private static AuthorityBitSet getAuthorityBits(Authentication authentication) {
+        if (authentication instanceof OAuth2Authentication) {
+            authentication = ((OAuth2Authentication) authentication).getUserAuthentication();
+            if (authentication == null) {
+                return null;
+            }
+        }
+        if (authentication instanceof AuthorityBitSet.Holder) {
+            return ((AuthorityBitSet.Holder) authentication).getAuthorityBits();
+        }
+        if (authentication.getPrincipal() instanceof AuthorityBitSet.Holder) {
+            return ((AuthorityBitSet.Holder) authentication.getPrincipal()).getAuthorityBits();
+        }
+        return null;
     }
 
 }
@@ -11,12 +11,17 @@ import java.util.Map;
 
 /**
  * Adds "user_id" to the token so we can identify users in other microservices.
+ * Adds "security_version" so a refresh can tell whether the user changed since the token was issued.
  * Adds the standard "iat" claim to tokens so we know when they have been created.
  * This is needed for a session timeout due to inactivity (ignored in case of "remember-me").
  */
 @Component
 public class ServiceNetTokenEnhancer implements TokenEnhancer {
 
+    public static final String USER_ID = "user_id";
+
+    public static final String SECURITY_VERSION = "security_version";
+
     @Override
     public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
         addClaims((DefaultOAuth2AccessToken) accessToken, authentication.getPrincipal());
@@ -29,7 +34,8 @@ public class ServiceNetTokenEnhancer implements TokenEnhancer {
             additionalInformation = new LinkedHashMap<String, Object>();
         }
         if (principal instanceof CustomSpringSecurityUser) {
-            additionalInformation.put("user_id", ((CustomSpringSecurityUser) principal).getId());
+            additionalInformation.put(USER_ID, ((CustomSpringSecurityUser) principal).getId());
+            additionalInformation.put(SECURITY_VERSION, ((CustomSpringSecurityUser) principal).getSecurityVersion());
         }
         //add "iat" claim with current time in secs
         //this is used for an inactive session timeout
@@ -0,0 +1,32 @@
+package org.benetech.servicenet.security;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.provider.token.DefaultUserAuthenticationConverter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the user authentication of a token as a {@link ServiceNetUserAuthenticationToken}, and keeps the "user_id"
+ * and "security_version" claims as its details, where {@link UserSnapshotRefreshAuthenticationProvider} finds them
+ * on a refresh.
+ */
+public class ServiceNetUserAuthenticationConverter extends DefaultUserAuthenticationConverter {
+
+    @Override
+    public Authentication extractAuthentication(Map<String, ?> map) {
+        Authentication authentication = super.extractAuthentication(map);
+        if (authentication == null) {
+            return null;
+        }
+        ServiceNetUserAuthenticationToken token = new ServiceNetUserAuthenticationToken(authentication.getPrincipal(),
+            authentication.getCredentials(), authentication.getAuthorities());
+        if (map.containsKey(ServiceNetTokenEnhancer.USER_ID)) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put(ServiceNetTokenEnhancer.USER_ID, map.get(ServiceNetTokenEnhancer.USER_ID));
+            details.put(ServiceNetTokenEnhancer.SECURITY_VERSION, map.get(ServiceNetTokenEnhancer.SECURITY_VERSION));
+            token.setDetails(details);
+        }
+        return token;
+    }
+}
@@ -0,0 +1,32 @@
+package org.benetech.servicenet.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Collection;
+
+/**
+ * The user authentication read from an access token, with the {@link AuthorityBitSet} of its authorities. Tokens
+ * are read once and then cached, so the bit set is built once per token.
+ */
+public class ServiceNetUserAuthenticationToken extends UsernamePasswordAuthenticationToken implements AuthorityBitSet.Holder {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient volatile AuthorityBitSet authorityBits;
+
+    public ServiceNetUserAuthenticationToken(Object principal, Object credentials,
+        Collection<? extends GrantedAuthority> authorities) {
+        super(principal, credentials, authorities);
+    }
+
+    @Override
+    public AuthorityBitSet getAuthorityBits() {
+        AuthorityBitSet bits = authorityBits;
+        if (bits == null) {
+            bits = AuthorityBitSet.of(getAuthorities());
+            authorityBits = bits;
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,39 @@
+package org.benetech.servicenet.security;
+
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.TokenRequest;
+import org.springframework.security.oauth2.provider.request.DefaultOAuth2RequestFactory;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Request factory that copies a client's token reuse window into the stored request of its client_credentials
+ * grants, where {@link ClientTokenReuse} picks it up without loading the client again.
+ */
+public class TokenReuseRequestFactory extends DefaultOAuth2RequestFactory {
+
+    private static final String CLIENT_CREDENTIALS = "client_credentials";
+
+    public TokenReuseRequestFactory(ClientDetailsService clientDetailsService) {
+        super(clientDetailsService);
+    }
+
+    @Override
+    public OAuth2Request createOAuth2Request(ClientDetails client, TokenRequest tokenRequest) {
+        OAuth2Request request = super.createOAuth2Request(client, tokenRequest);
+        Object reuseSeconds = client.getAdditionalInformation().get(ClientTokenReuse.TOKEN_REUSE_SECONDS);
+        if (!CLIENT_CREDENTIALS.equals(tokenRequest.getGrantType()) || !(reuseSeconds instanceof Number)
+            || ((Number) reuseSeconds).intValue() <= 0) {
+            return request;
+        }
+        Map<String, Serializable> extensions = new HashMap<>(request.getExtensions());
+        extensions.put(ClientTokenReuse.TOKEN_REUSE_SECONDS, ((Number) reuseSeconds).intValue());
+        return new OAuth2Request(request.getRequestParameters(), request.getClientId(), request.getAuthorities(),
+            request.isApproved(), request.getScope(), request.getResourceIds(), request.getRedirectUri(),
+            request.getResponseTypes(), extensions);
+    }
+}
@@ -0,0 +1,187 @@
+package org.benetech.servicenet.security;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.benetech.servicenet.config.UaaProperties;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens revoked before they expire: single tokens by their {@code jti}, and all tokens of a user issued up to the
+ * moment it was deleted or deactivated. Revocations are kept in Hazelcast maps, so they apply on every node.
+ * <p>
+ * Every token read is checked, so each node keeps a {@link BloomFilter} of the revoked token ids and users, fed by
+ * Hazelcast entry events. Tokens that are not revoked are almost always answered by the filter alone; only the
+ * others, and a small share of false positives, are looked up in Hazelcast. Revocations expire with the tokens they
+ * revoke, while a Bloom filter can't forget, so the filter is rebuilt from the maps every hour.
+ */
+@Component
+public class TokenRevocations {
+
+    public static final String TOKEN_MAP_NAME = "revokedTokens";
+
+    public static final String USER_MAP_NAME = "revokedUserTokens";
+
+    private static final String METRIC_NAME = "oauth.token.revocation.checks";
+
+    private static final long REBUILD_INTERVAL_MILLIS = 60 * 60 * 1000L;
+
+    private final IMap<String, Long> revokedTokens;
+
+    private final IMap<String, Long> revokedUsers;
+
+    private final UaaProperties.TokenRevocation properties;
+
+    private final Counter filtered;
+
+    private final Counter notRevoked;
+
+    private final Counter revoked;
+
+    private volatile BloomFilter filter;
+
+    private volatile BloomFilter pendingFilter;
+
+    public TokenRevocations(HazelcastInstance hazelcastInstance, UaaProperties uaaProperties, MeterRegistry meterRegistry) {
+        this.revokedTokens = hazelcastInstance.getMap(TOKEN_MAP_NAME);
+        this.revokedUsers = hazelcastInstance.getMap(USER_MAP_NAME);
+        this.properties = uaaProperties.getTokenRevocation();
+        this.filtered = Counter.builder(METRIC_NAME)
+            .tag("result", "filtered")
+            .description("Token checks answered by the Bloom filter")
+            .register(meterRegistry);
+        this.notRevoked = Counter.builder(METRIC_NAME)
+            .tag("result", "not_revoked")
+            .description("Token checks looked up in Hazelcast that found no revocation")
+            .register(meterRegistry);
+        this.revoked = Counter.builder(METRIC_NAME)
+            .tag("result", "revoked")
+            .description("Token checks that found the token revoked")
+            .register(meterRegistry);
+        this.filter = newFilter();
+        revokedTokens.addEntryListener((EntryAddedListener<String, Long>) event -> remember(tokenKey(event.getKey())), false);
+        revokedUsers.addEntryListener((EntryAddedListener<String, Long>) event -> remember(userKey(event.getKey())), false);
+        rebuildFilter();
+    }
+
+    /**
+     * Revokes a token until it expires.
+     */
+    public void revokeToken(OAuth2AccessToken accessToken) {
+        Object tokenId = accessToken.getAdditionalInformation().get(AccessTokenConverter.JTI);
+        if (tokenId == null || accessToken.getExpiration() == null || accessToken.getExpiresIn() <= 0) {
+            return;
+        }
+        revokedTokens.set(tokenId.toString(), accessToken.getExpiration().getTime() / 1000L,
+            accessToken.getExpiresIn(), TimeUnit.SECONDS);
+        // entry events arrive asynchronously, even on this node
+        remember(tokenKey(tokenId.toString()));
+    }
+
+    /**
+     * Revokes every token issued to the user so far, once the current transaction commits, or right away outside of
+     * a transaction: a change rolled back must not log the user out.
+     */
+    public void revokeUserTokens(UUID userId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    revokeUserTokensNow(userId);
+                }
+            });
+        } else {
+            revokeUserTokensNow(userId);
+        }
+    }
+
+    private void revokeUserTokensNow(UUID userId) {
+        revokedUsers.set(userId.toString(), System.currentTimeMillis() / 1000L,
+            properties.getUserRevocationTimeToLiveSeconds(), TimeUnit.SECONDS);
+        remember(userKey(userId.toString()));
+    }
+
+    /**
+     * @param claims the claims of a verified access or refresh token.
+     * @return whether the token, the access token a refresh token was issued with, or all tokens of its user
+     * have been revoked.
+     */
+    public boolean isRevoked(Map<String, ?> claims) {
+        Object tokenId = claims.get(AccessTokenConverter.JTI);
+        Object accessTokenId = claims.get(AccessTokenConverter.ATI);
+        Object userId = claims.get(ServiceNetTokenEnhancer.USER_ID);
+        BloomFilter current = filter;
+        boolean tokenSuspect = tokenId != null && current.mightContain(tokenKey(tokenId.toString()));
+        boolean accessTokenSuspect = accessTokenId != null && current.mightContain(tokenKey(accessTokenId.toString()));
+        boolean userSuspect = userId != null && current.mightContain(userKey(userId.toString()));
+        if (!tokenSuspect && !accessTokenSuspect && !userSuspect) {
+            filtered.increment();
+            return false;
+        }
+        if ((tokenSuspect && revokedTokens.containsKey(tokenId.toString()))
+            || (accessTokenSuspect && revokedTokens.containsKey(accessTokenId.toString()))
+            || (userSuspect && isIssuedBeforeRevocation(claims.get("iat"), revokedUsers.get(userId.toString())))) {
+            revoked.increment();
+            return true;
+        }
+        notRevoked.increment();
+        return false;
+    }
+
+    /**
+     * Rebuilds the Bloom filter from the revocations that haven't expired yet. Revocations made meanwhile go into
+     * both the old and the new filter.
+     */
+    @Scheduled(initialDelay = REBUILD_INTERVAL_MILLIS, fixedDelay = REBUILD_INTERVAL_MILLIS)
+    public void rebuildFilter() {
+        BloomFilter rebuilt = newFilter();
+        pendingFilter = rebuilt;
+        revokedTokens.keySet().forEach(tokenId -> rebuilt.put(tokenKey(tokenId)));
+        revokedUsers.keySet().forEach(userId -> rebuilt.put(userKey(userId)));
+        filter = rebuilt;
+        pendingFilter = null;
+    }
+
+    private void remember(String key) {
+        BloomFilter current = filter;
+        current.put(key);
+        BloomFilter pending = pendingFilter;
+        if (pending != null) {
+            pending.put(key);
+        }
+        if (filter != current) {
+            filter.put(key);
+        }
+    }
+
+    private BloomFilter newFilter() {
+        return new BloomFilter(properties.getExpectedRevocations(), properties.getFalsePositiveProbability());
+    }
+
+    private static boolean isIssuedBeforeRevocation(Object issuedAt, Long revokedAt) {
+        if (revokedAt == null) {
+            return false;
+        }
+        // tokens without an issue time can't be told apart, treat them as revoked
+        return !(issuedAt instanceof Number) || ((Number) issuedAt).longValue() <= revokedAt;
+    }
+
+    private static String tokenKey(String tokenId) {
+        return "jti:" + tokenId;
+    }
+
+    private static String userKey(String userId) {
+        return "user:" + userId;
+    }
+}
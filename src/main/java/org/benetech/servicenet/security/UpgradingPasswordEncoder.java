@@ -0,0 +1,107 @@
+package org.benetech.servicenet.security;
+
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.crypto.password.Pbkdf2PasswordEncoder;
+import org.springframework.security.crypto.scrypt.SCryptPasswordEncoder;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Password encoder that hashes with one target algorithm, but still accepts hashes made with any supported one.
+ * <p>
+ * BCrypt hashes are stored bare, as they always have been in {@code password_hash}; other algorithms are
+ * stored with a {@code {id}} prefix. {@link #upgradeEncoding(String)} reports every hash whose algorithm, or
+ * BCrypt cost, differs from the target, so that Spring Security re-hashes it on the next successful login
+ * (see {@link DomainUserDetailsService#updatePassword}).
+ */
+public class UpgradingPasswordEncoder implements PasswordEncoder {
+
+    public static final String BCRYPT = "bcrypt";
+
+    public static final String PBKDF2 = "pbkdf2";
+
+    public static final String SCRYPT = "scrypt";
+
+    public static final String ARGON2 = "argon2";
+
+    private static final Pattern BCRYPT_PATTERN = Pattern.compile("\\A\\$2[aby]?\\$(\\d\\d)\\$[./0-9A-Za-z]{53}");
+
+    private static final String ID_PREFIX = "{";
+
+    private static final String ID_SUFFIX = "}";
+
+    private final String targetId;
+
+    private final int bcryptStrength;
+
+    private final Map<String, PasswordEncoder> encoders;
+
+    /**
+     * @param targetId       the algorithm new hashes are made with: {@value #BCRYPT}, {@value #PBKDF2},
+     *                       {@value #SCRYPT} or {@value #ARGON2}.
+     * @param bcryptStrength the BCrypt cost new BCrypt hashes are made with.
+     */
+    public UpgradingPasswordEncoder(String targetId, int bcryptStrength) {
+        this.targetId = targetId;
+        this.bcryptStrength = bcryptStrength;
+        this.encoders = Map.of(
+            BCRYPT, new BCryptPasswordEncoder(bcryptStrength),
+            PBKDF2, new Pbkdf2PasswordEncoder(),
+            SCRYPT, new SCryptPasswordEncoder(),
+            ARGON2, new Argon2PasswordEncoder());
+        if (!encoders.containsKey(targetId)) {
+            throw new IllegalArgumentException("Unsupported password hashing algorithm: " + targetId);
+        }
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        String hash = encoders.get(targetId).encode(rawPassword);
+        return BCRYPT.equals(targetId) ? hash : ID_PREFIX + targetId + ID_SUFFIX + hash;
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        String id = extractId(encodedPassword);
+        PasswordEncoder encoder = id == null ? null : encoders.get(id);
+        return encoder != null && encoder.matches(rawPassword, extractHash(encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+        String id = extractId(encodedPassword);
+        if (!targetId.equals(id)) {
+            return true;
+        }
+        if (BCRYPT.equals(id)) {
+            Matcher matcher = BCRYPT_PATTERN.matcher(extractHash(encodedPassword));
+            return !matcher.find() || Integer.parseInt(matcher.group(1)) != bcryptStrength;
+        }
+        return false;
+    }
+
+    private String extractId(String encodedPassword) {
+        if (!encodedPassword.startsWith(ID_PREFIX)) {
+            return BCRYPT;
+        }
+        int end = encodedPassword.indexOf(ID_SUFFIX);
+        return end < 0 ? null : encodedPassword.substring(ID_PREFIX.length(), end);
+    }
+
+    private String extractHash(String encodedPassword) {
+        if (!encodedPassword.startsWith(ID_PREFIX)) {
+            return encodedPassword;
+        }
+        return encodedPassword.substring(encodedPassword.indexOf(ID_SUFFIX) + ID_SUFFIX.length());
+    }
+}
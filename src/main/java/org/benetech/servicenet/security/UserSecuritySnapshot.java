@@ -0,0 +1,66 @@
+package org.benetech.servicenet.security;
+
+import org.benetech.servicenet.domain.Authority;
+import org.benetech.servicenet.domain.User;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The part of a user that decides whether it may still get tokens: its login, activation, authorities and
+ * security version. Small enough to keep in Hazelcast for every active user.
+ */
+public class UserSecuritySnapshot implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final UUID id;
+
+    private final String login;
+
+    private final boolean activated;
+
+    private final List<String> authorities;
+
+    private final long securityVersion;
+
+    public UserSecuritySnapshot(UUID id, String login, boolean activated, List<String> authorities, long securityVersion) {
+        this.id = id;
+        this.login = login;
+        this.activated = activated;
+        this.authorities = Collections.unmodifiableList(new ArrayList<>(authorities));
+        this.securityVersion = securityVersion;
+    }
+
+    public static UserSecuritySnapshot of(User user) {
+        List<String> authorities = new ArrayList<>();
+        for (Authority authority : user.getAuthorities()) {
+            authorities.add(authority.getName());
+        }
+        return new UserSecuritySnapshot(user.getId(), user.getLogin(), user.getActivated(), authorities,
+            user.getSecurityVersion());
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public boolean isActivated() {
+        return activated;
+    }
+
+    public List<String> getAuthorities() {
+        return authorities;
+    }
+
+    public long getSecurityVersion() {
+        return securityVersion;
+    }
+}
@@ -0,0 +1,85 @@
+package org.benetech.servicenet.security;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.benetech.servicenet.repository.UserRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.UUID;
+
+/**
+ * {@link UserSecuritySnapshot}s of users, shared between nodes through a Hazelcast map and loaded from the database
+ * on a miss. {@link org.benetech.servicenet.service.UserService} evicts a user's snapshot whenever it changes them.
+ */
+@Component
+public class UserSecuritySnapshots {
+
+    public static final String MAP_NAME = "userSecuritySnapshots";
+
+    private static final String METRIC_NAME = "oauth.user.snapshots";
+
+    private final IMap<UUID, UserSecuritySnapshot> snapshots;
+
+    private final UserRepository userRepository;
+
+    private final Counter cached;
+
+    private final Counter loaded;
+
+    public UserSecuritySnapshots(HazelcastInstance hazelcastInstance, UserRepository userRepository,
+        MeterRegistry meterRegistry) {
+        this.snapshots = hazelcastInstance.getMap(MAP_NAME);
+        this.userRepository = userRepository;
+        this.cached = Counter.builder(METRIC_NAME)
+            .tag("result", "cached")
+            .description("User snapshot lookups answered from Hazelcast")
+            .register(meterRegistry);
+        this.loaded = Counter.builder(METRIC_NAME)
+            .tag("result", "loaded")
+            .description("User snapshot lookups that loaded the user from the database")
+            .register(meterRegistry);
+    }
+
+    /**
+     * @param id the id of the user.
+     * @return the user's snapshot, or {@code null} if there is no such user.
+     */
+    @Transactional(readOnly = true)
+    public UserSecuritySnapshot get(UUID id) {
+        UserSecuritySnapshot snapshot = snapshots.get(id);
+        if (snapshot != null) {
+            cached.increment();
+            return snapshot;
+        }
+        loaded.increment();
+        snapshot = userRepository.findOneWithAuthoritiesById(id).map(UserSecuritySnapshot::of).orElse(null);
+        if (snapshot != null) {
+            snapshots.set(id, snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Forgets the user's snapshot on all nodes, and again once the current transaction commits so that a snapshot
+     * loaded concurrently from the not yet committed state doesn't stay around.
+     */
+    public void evict(UUID id) {
+        if (id == null) {
+            return;
+        }
+        snapshots.delete(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    snapshots.delete(id);
+                }
+            });
+        }
+    }
+}
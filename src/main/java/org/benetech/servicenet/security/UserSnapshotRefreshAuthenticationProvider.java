@@ -0,0 +1,72 @@
+package org.benetech.servicenet.security;
+
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Re-authenticates the user of a refresh_token grant from its {@link UserSecuritySnapshot} instead of loading the
+ * user from the database. The refresh is refused if the user is gone or deactivated, or if its security version moved
+ * on since the refresh token was issued, i.e. its password, authorities or activation changed.
+ * <p>
+ * Refresh tokens issued before they carried a security version are handed to the fallback provider, which loads
+ * the user by name.
+ */
+public class UserSnapshotRefreshAuthenticationProvider implements AuthenticationProvider {
+
+    private final UserSecuritySnapshots userSecuritySnapshots;
+
+    private final AuthenticationProvider fallback;
+
+    public UserSnapshotRefreshAuthenticationProvider(UserSecuritySnapshots userSecuritySnapshots,
+        AuthenticationProvider fallback) {
+        this.userSecuritySnapshots = userSecuritySnapshots;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        Object userAuthentication = authentication.getPrincipal();
+        Object details = userAuthentication instanceof Authentication ? ((Authentication) userAuthentication).getDetails() : null;
+        Object userId = details instanceof Map ? ((Map<?, ?>) details).get(ServiceNetTokenEnhancer.USER_ID) : null;
+        Object securityVersion = details instanceof Map ? ((Map<?, ?>) details).get(ServiceNetTokenEnhancer.SECURITY_VERSION) : null;
+        if (userId == null || !(securityVersion instanceof Number)) {
+            return fallback.authenticate(authentication);
+        }
+
+        UserSecuritySnapshot snapshot = userSecuritySnapshots.get(UUID.fromString(userId.toString()));
+        if (snapshot == null) {
+            throw new UsernameNotFoundException("User " + userId + " was not found in the database");
+        }
+        if (!snapshot.isActivated()) {
+            throw new UserNotActivatedException("User " + snapshot.getLogin() + " was not activated");
+        }
+        if (snapshot.getSecurityVersion() != ((Number) securityVersion).longValue()) {
+            throw new InvalidGrantException("Refresh token was issued before the user's credentials changed");
+        }
+        List<GrantedAuthority> authorities = snapshot.getAuthorities().stream()
+            .map(SimpleGrantedAuthority::new)
+            .collect(Collectors.toList());
+        CustomSpringSecurityUser user = new CustomSpringSecurityUser(snapshot.getLogin(), "", authorities,
+            snapshot.getId(), snapshot.getSecurityVersion());
+        PreAuthenticatedAuthenticationToken result = new PreAuthenticatedAuthenticationToken(user,
+            authentication.getCredentials(), authorities);
+        result.setDetails(authentication.getDetails());
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return PreAuthenticatedAuthenticationToken.class.isAssignableFrom(authentication);
+    }
+}
@@ -0,0 +1,124 @@
+package org.benetech.servicenet.service;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import org.benetech.servicenet.domain.Authority;
+import org.benetech.servicenet.repository.AuthorityRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * All authorities, read from the database on first use and kept in an immutable map, so that resolving the
+ * authorities of a user takes no query.
+ * <p>
+ * {@link AuthorityRegistryListener} reports every change to an authority. Once the change is committed, a message on
+ * a Hazelcast topic makes every node reload the authorities on next use. Each change moves to a new generation, and
+ * authorities loaded in an older one are not used, even if the change came while they were being read.
+ */
+@Component
+public class AuthorityRegistry {
+
+    public static final String TOPIC_NAME = "authorityChanges";
+
+    private final Logger log = LoggerFactory.getLogger(AuthorityRegistry.class);
+
+    private final AuthorityRepository authorityRepository;
+
+    private final ITopic<Long> changes;
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile Loaded authorities;
+
+    public AuthorityRegistry(@Lazy AuthorityRepository authorityRepository, HazelcastInstance hazelcastInstance) {
+        this.authorityRepository = authorityRepository;
+        this.changes = hazelcastInstance.getTopic(TOPIC_NAME);
+        changes.addMessageListener(message -> generation.incrementAndGet());
+    }
+
+    /**
+     * @return the authority with that name, detached and shared: it must not be modified.
+     */
+    public Optional<Authority> find(String name) {
+        return Optional.ofNullable(authorities().get(name));
+    }
+
+    /**
+     * @return the names of all authorities.
+     */
+    public List<String> getNames() {
+        return new ArrayList<>(authorities().keySet());
+    }
+
+    /**
+     * Makes every node reload the authorities, once the current transaction commits.
+     */
+    public void authoritiesChanged() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    publishChange();
+                }
+            });
+        } else {
+            publishChange();
+        }
+    }
+
+    private void publishChange() {
+        // messages are delivered asynchronously, even on this node
+        generation.incrementAndGet();
+        changes.publish(System.currentTimeMillis());
+    }
+
+    private Map<String, Authority> authorities() {
+        Loaded current = authorities;
+        if (current == null || current.generation != generation.get()) {
+            synchronized (this) {
+                current = authorities;
+                long started = generation.get();
+                if (current == null || current.generation != started) {
+                    current = new Loaded(started, load());
+                    authorities = current;
+                }
+            }
+        }
+        return current.authorities;
+    }
+
+    private Map<String, Authority> load() {
+        Map<String, Authority> loaded = new LinkedHashMap<>();
+        for (Authority authority : authorityRepository.findAll()) {
+            Authority copy = new Authority();
+            copy.setName(authority.getName());
+            loaded.put(copy.getName(), copy);
+        }
+        log.debug("Loaded {} authorities", loaded.size());
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    private static final class Loaded {
+
+        private final long generation;
+
+        private final Map<String, Authority> authorities;
+
+        Loaded(long generation, Map<String, Authority> authorities) {
+            this.generation = generation;
+            this.authorities = authorities;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.benetech.servicenet.service;
+
+import org.benetech.servicenet.domain.Authority;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Entity listener reporting every saved or removed {@link Authority} to the {@link AuthorityRegistry}. Hibernate gets
+ * it from the Spring context, with its dependencies injected.
+ */
+public class AuthorityRegistryListener {
+
+    private final AuthorityRegistry authorityRegistry;
+
+    public AuthorityRegistryListener(AuthorityRegistry authorityRegistry) {
+        this.authorityRegistry = authorityRegistry;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void authorityChanged(Authority authority) {
+        authorityRegistry.authoritiesChanged();
+    }
+}
@@ -1,6 +1,13 @@
 package org.benetech.servicenet.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.jhipster.config.JHipsterProperties;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -10,15 +17,21 @@ import org.benetech.servicenet.config.UaaProperties;
 import org.benetech.servicenet.domain.Client;
 import org.benetech.servicenet.repository.ClientRepository;
 import org.benetech.servicenet.security.AuthoritiesConstants;
+import org.benetech.servicenet.security.ClientSecretVerificationCache;
+import org.benetech.servicenet.security.ClientTokenReuse;
 import org.benetech.servicenet.service.dto.ClientDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Service class for managing users.
@@ -45,6 +58,17 @@ public class ClientService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ClientSecretVerificationCache clientSecretVerificationCache;
+
+    @Autowired
+    private ClientTokenReuse clientTokenReuse;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
     public ClientDTO createExternalClient(ClientDTO clientDTO) {
         if (StringUtils.isBlank(clientDTO.getClientSecret())) {
             throw new InvalidPasswordException();
@@ -60,6 +84,8 @@ public class ClientService {
             tokenValidity,
             AuthoritiesConstants.EXTERNAL
         );
+        setTokenReuseSeconds(client, clientDTO.getTokenReuseSeconds());
+        clearClientCache(client.getClientId());
         return toDto(clientRepository.save(client));
     }
 
@@ -71,9 +97,12 @@ public class ClientService {
                 .max(clientDTO.getTokenValiditySeconds(), MIN_ACCESS_TOKEN_VALIDITY_SECS);
             if (StringUtils.isNotBlank(clientDTO.getClientSecret())) {
                 client.setClientSecret(passwordEncoder.encode(clientDTO.getClientSecret()));
+                clientSecretVerificationCache.clear();
             }
             client.setAccessTokenValiditySeconds(tokenValidity);
             client.setRefreshTokenValiditySeconds(tokenValidity);
+            setTokenReuseSeconds(client, clientDTO.getTokenReuseSeconds());
+            clearClientCache(client.getClientId());
             return Optional.of(toDto(clientRepository.save(client)));
         }
         return Optional.empty();
@@ -91,6 +120,7 @@ public class ClientService {
     public void deleteExternalClient(String id) {
         if (!getInitialClientIds().contains(id)) {
             clientRepository.deleteById(id);
+            clearClientCache(id);
         }
     }
 
@@ -130,9 +160,43 @@ public class ClientService {
         ClientDTO clientDTO = new ClientDTO();
         clientDTO.setClientId(client.getClientId());
         clientDTO.setTokenValiditySeconds(client.getAccessTokenValiditySeconds());
+        Object tokenReuseSeconds = readAdditionalInformation(client).get(ClientTokenReuse.TOKEN_REUSE_SECONDS);
+        if (tokenReuseSeconds instanceof Number) {
+            clientDTO.setTokenReuseSeconds(((Number) tokenReuseSeconds).intValue());
+        }
         return clientDTO;
     }
 
+    /**
+     * Stores the token reuse window in the client's additional information, where the token endpoint reads it
+     * from the client details.
+     */
+    private void setTokenReuseSeconds(Client client, Integer tokenReuseSeconds) {
+        Map<String, Object> additionalInformation = readAdditionalInformation(client);
+        if (tokenReuseSeconds == null || tokenReuseSeconds <= 0) {
+            additionalInformation.remove(ClientTokenReuse.TOKEN_REUSE_SECONDS);
+        } else {
+            additionalInformation.put(ClientTokenReuse.TOKEN_REUSE_SECONDS, tokenReuseSeconds);
+        }
+        try {
+            client.setAdditionalInformation(additionalInformation.isEmpty() ? null : objectMapper.writeValueAsString(additionalInformation));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not write additional information of client " + client.getClientId(), e);
+        }
+    }
+
+    private Map<String, Object> readAdditionalInformation(Client client) {
+        if (StringUtils.isBlank(client.getAdditionalInformation())) {
+            return new HashMap<>();
+        }
+        try {
+            return objectMapper.readValue(client.getAdditionalInformation(), new TypeReference<HashMap<String, Object>>() { });
+        } catch (IOException e) {
+            log.warn("Could not read additional information of client {}: {}", client.getClientId(), e.getMessage());
+            return new HashMap<>();
+        }
+    }
+
     private void createOrUpdateClient(String clientId, String clientSecret, String scope,
         String authorizedGrantTypes,
         int accessTokenValidity, int refreshTokenValidity, String authorities) {
@@ -152,5 +216,25 @@ public class ClientService {
         client.setRefreshTokenValiditySeconds(refreshTokenValidity);
         client.setAuthorities(authorities);
         clientRepository.save(client);
+        clearClientCache(clientId);
+    }
+
+    /**
+     * Evicts the client from the token endpoint's client cache. The entry is dropped right away and once more
+     * after commit, so a token request racing with this transaction cannot leave the old secret cached.
+     * Tokens kept for reuse are forgotten too, so the next grant reflects the new settings.
+     */
+    private void clearClientCache(String clientId) {
+        Cache cache = Objects.requireNonNull(cacheManager.getCache(ClientRepository.CLIENT_DETAILS_CACHE));
+        cache.evict(clientId);
+        clientTokenReuse.forgetClient(clientId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.evict(clientId);
+                }
+            });
+        }
     }
 }
@@ -0,0 +1,127 @@
+package org.benetech.servicenet.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.benetech.servicenet.service.dto.UserDTO;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Writes users to an export file as they are read, see {@link UserService#exportUsers(java.util.function.Consumer)}.
+ * <p>
+ * CSV files start with a header naming {@link #CSV_COLUMNS}, authorities being separated by spaces as in
+ * {@link UserImportReader}. Fields that a spreadsheet would evaluate as a formula are quoted and prefixed with
+ * {@code '}, which the importer keeps. NDJSON files hold one user per line, as returned by {@code GET /api/users}.
+ */
+public abstract class UserExportWriter implements Closeable, Flushable {
+
+    public static final List<String> CSV_COLUMNS = Arrays.asList(
+        "id", "login", "email", "firstName", "lastName", "langKey", "imageUrl", "activated", "authorities",
+        "createdBy", "createdDate", "lastModifiedBy", "lastModifiedDate");
+
+    private final Writer writer;
+
+    private UserExportWriter(OutputStream out) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    public static UserExportWriter csv(OutputStream out) throws IOException {
+        return new Csv(out);
+    }
+
+    public static UserExportWriter ndjson(OutputStream out, ObjectMapper objectMapper) {
+        return new Ndjson(out, objectMapper);
+    }
+
+    public abstract void write(UserDTO user) throws IOException;
+
+    /**
+     * Sends what was written so far to the output stream, and flushes it.
+     */
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * Flushes and closes the output stream, which completes its content if it is compressed.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    final Writer writer() {
+        return writer;
+    }
+
+    private static final class Csv extends UserExportWriter {
+
+        //first characters that make spreadsheets evaluate a cell as a formula
+        private static final String FORMULA_PREFIXES = "=+-@\t\r";
+
+        Csv(OutputStream out) throws IOException {
+            super(out);
+            writeRecord(CSV_COLUMNS.toArray());
+        }
+
+        @Override
+        public void write(UserDTO user) throws IOException {
+            writeRecord(user.getId(), user.getLogin(), user.getEmail(), user.getFirstName(), user.getLastName(),
+                user.getLangKey(), user.getImageUrl(), user.isActivated(), String.join(" ", new TreeSet<>(user.getAuthorities())),
+                user.getCreatedBy(), user.getCreatedDate(), user.getLastModifiedBy(), user.getLastModifiedDate());
+        }
+
+        private void writeRecord(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer().write(',');
+                }
+                if (values[i] != null) {
+                    writeField(String.valueOf(values[i]));
+                }
+            }
+            writer().write("\r\n");
+        }
+
+        private void writeField(String value) throws IOException {
+            boolean formula = !value.isEmpty() && FORMULA_PREFIXES.indexOf(value.charAt(0)) >= 0;
+            if (!formula && value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+                writer().write(value);
+                return;
+            }
+            writer().write('"');
+            if (formula) {
+                writer().write('\'');
+            }
+            writer().write(value.replace("\"", "\"\""));
+            writer().write('"');
+        }
+    }
+
+    private static final class Ndjson extends UserExportWriter {
+
+        private final ObjectMapper objectMapper;
+
+        Ndjson(OutputStream out, ObjectMapper objectMapper) {
+            super(out);
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        public void write(UserDTO user) throws IOException {
+            writer().write(objectMapper.writeValueAsString(user));
+            writer().write('\n');
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package org.benetech.servicenet.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.benetech.servicenet.service.dto.ImportedUserDTO;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads the users of an import file one row at a time, so that only the row being read is held in memory whatever
+ * the size of the file. A row that can't be read is returned with an error instead of a user, and reading goes on
+ * with the next one.
+ * <p>
+ * CSV files start with a header naming their columns, among {@link #CSV_COLUMNS}, {@code login} being required.
+ * Authorities are separated by spaces. NDJSON files hold one user per line, as sent to {@code POST /api/users} with
+ * an optional {@code password}.
+ */
+public abstract class UserImportReader implements Closeable {
+
+    public static final List<String> CSV_COLUMNS = Arrays.asList(
+        "login", "email", "firstName", "lastName", "langKey", "imageUrl", "authorities", "password");
+
+    //longest row read, longer rows are rejected without being kept
+    static final int MAX_ROW_LENGTH = 8192;
+
+    private final BufferedReader reader;
+
+    private long line = 1;
+
+    private UserImportReader(InputStream in) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the header is missing or names an unknown column.
+     */
+    public static UserImportReader csv(InputStream in) throws IOException {
+        return new Csv(in);
+    }
+
+    public static UserImportReader ndjson(InputStream in, ObjectMapper objectMapper) {
+        return new Ndjson(in, objectMapper);
+    }
+
+    /**
+     * @return the next row, or {@code null} at the end of the file.
+     */
+    public abstract Row next() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * @return the next character, or -1 at the end of the file.
+     */
+    final int read() throws IOException {
+        int c = reader.read();
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+
+    /**
+     * @return the line of the next character, counting from 1.
+     */
+    final long line() {
+        return line;
+    }
+
+    /**
+     * A user read from the file, or the reason it couldn't be.
+     */
+    public static final class Row {
+
+        private final long line;
+
+        private final ImportedUserDTO user;
+
+        private final String error;
+
+        private Row(long line, ImportedUserDTO user, String error) {
+            this.line = line;
+            this.user = user;
+            this.error = error;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        /**
+         * @return the user, {@code null} if the row couldn't be read.
+         */
+        public ImportedUserDTO getUser() {
+            return user;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    private static final class Csv extends UserImportReader {
+
+        private final List<String> columns;
+
+        private boolean tooLong;
+
+        Csv(InputStream in) throws IOException {
+            super(in);
+            List<String> header = readRecord();
+            if (header == null || tooLong || !header.contains("login")) {
+                throw new IllegalArgumentException("The CSV header must name the columns, including login");
+            }
+            Set<String> unknown = new HashSet<>(header);
+            unknown.removeAll(CSV_COLUMNS);
+            if (!unknown.isEmpty()) {
+                throw new IllegalArgumentException("Unknown CSV columns " + unknown + ", expected " + CSV_COLUMNS);
+            }
+            this.columns = header;
+        }
+
+        @Override
+        public Row next() throws IOException {
+            List<String> fields;
+            long start;
+            do {
+                start = line();
+                fields = readRecord();
+                if (fields == null) {
+                    return null;
+                }
+            } while (!tooLong && fields.size() == 1 && fields.get(0).isEmpty());
+            if (tooLong) {
+                return new Row(start, null, "Row longer than " + MAX_ROW_LENGTH + " characters");
+            }
+            if (fields.size() != columns.size()) {
+                return new Row(start, null, "Expected " + columns.size() + " fields, found " + fields.size());
+            }
+            ImportedUserDTO user = new ImportedUserDTO();
+            for (int i = 0; i < columns.size(); i++) {
+                String value = fields.get(i).isEmpty() ? null : fields.get(i);
+                set(user, columns.get(i), value);
+            }
+            return new Row(start, user, null);
+        }
+
+        private static void set(ImportedUserDTO user, String column, String value) {
+            switch (column) {
+                case "login":
+                    user.setLogin(value);
+                    break;
+                case "email":
+                    user.setEmail(value);
+                    break;
+                case "firstName":
+                    user.setFirstName(value);
+                    break;
+                case "lastName":
+                    user.setLastName(value);
+                    break;
+                case "langKey":
+                    user.setLangKey(value);
+                    break;
+                case "imageUrl":
+                    user.setImageUrl(value);
+                    break;
+                case "authorities":
+                    user.setAuthorities(value == null ? null : new HashSet<>(Arrays.asList(value.trim().split("\\s+"))));
+                    break;
+                default:
+                    user.setPassword(value);
+            }
+        }
+
+        /**
+         * Reads the fields of a record, which quoted fields may spread over several lines.
+         *
+         * @return the fields, or {@code null} at the end of the file.
+         */
+        private List<String> readRecord() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            int length = 0;
+            boolean quoted = false;
+            tooLong = false;
+            while (true) {
+                if (quoted) {
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            quoted = false;
+                            continue;
+                        }
+                    } else if (c == -1) {
+                        fields.add(field.toString());
+                        return fields;
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                    c = read();
+                    continue;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    c = read();
+                    continue;
+                } else if (c == '\n' || c == -1) {
+                    fields.add(field.toString());
+                    return fields;
+                } else if (c == '\r') {
+                    c = read();
+                    continue;
+                }
+                if (++length > MAX_ROW_LENGTH) {
+                    tooLong = true;
+                } else {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+        }
+    }
+
+    private static final class Ndjson extends UserImportReader {
+
+        private final ObjectMapper objectMapper;
+
+        Ndjson(InputStream in, ObjectMapper objectMapper) {
+            super(in);
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        public Row next() throws IOException {
+            StringBuilder json = new StringBuilder();
+            long start;
+            boolean tooLong;
+            do {
+                start = line();
+                json.setLength(0);
+                tooLong = false;
+                int c = read();
+                if (c == -1) {
+                    return null;
+                }
+                while (c != '\n' && c != -1) {
+                    if (json.length() == MAX_ROW_LENGTH) {
+                        tooLong = true;
+                    } else {
+                        json.append((char) c);
+                    }
+                    c = read();
+                }
+            } while (!tooLong && json.toString().trim().isEmpty());
+            if (tooLong) {
+                return new Row(start, null, "Row longer than " + MAX_ROW_LENGTH + " characters");
+            }
+            try {
+                return new Row(start, objectMapper.readValue(json.toString(), ImportedUserDTO.class), null);
+            } catch (JsonProcessingException e) {
+                return new Row(start, null, "Malformed JSON: " + e.getOriginalMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package org.benetech.servicenet.service;
+
+import org.benetech.servicenet.config.Constants;
+import org.benetech.servicenet.config.UaaProperties;
+import org.benetech.servicenet.domain.Authority;
+import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.repository.UserRepository;
+import org.benetech.servicenet.service.dto.ImportedUserDTO;
+import org.benetech.servicenet.service.dto.UserImportResultDTO;
+
+import io.github.jhipster.security.RandomUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Service class for creating users in bulk from an import file, see {@link UserImportReader}.
+ * <p>
+ * Rows are read, validated and created a batch of {@code hibernate.jdbc.batch_size} rows at a time, each batch in
+ * its own transaction, so that memory use doesn't grow with the file and, with {@code hibernate.order_inserts}, the
+ * users of a batch and their authorities are inserted in one JDBC batch each.
+ * <p>
+ * The passwords of a batch are hashed concurrently from a fork-join pool, whose threads wait on the bounded hashing
+ * pool of the {@link PasswordEncoder}: the import never has more than
+ * {@link UaaProperties.PasswordHashing#getImportParallelism()} hashes queued there, which leaves room for logins.
+ */
+@Service
+public class UserImportService implements DisposableBean {
+
+    private final Logger log = LoggerFactory.getLogger(UserImportService.class);
+
+    private final UserRepository userRepository;
+
+    private final PasswordEncoder passwordEncoder;
+
+    private final AuthorityRegistry authorityRegistry;
+
+    private final MailService mailService;
+
+    private final Validator validator;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final int batchSize;
+
+    private final ForkJoinPool hashingPool;
+
+    public UserImportService(UserRepository userRepository, PasswordEncoder passwordEncoder,
+        AuthorityRegistry authorityRegistry, MailService mailService, Validator validator,
+        PlatformTransactionManager transactionManager, UaaProperties uaaProperties,
+        @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:25}") int batchSize) {
+        this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.authorityRegistry = authorityRegistry;
+        this.mailService = mailService;
+        this.validator = validator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        UaaProperties.PasswordHashing passwordHashing = uaaProperties.getPasswordHashing();
+        int hashingThreads = passwordHashing.getThreads() > 0 ? passwordHashing.getThreads() : Runtime.getRuntime().availableProcessors();
+        int parallelism = passwordHashing.getImportParallelism() > 0 ? passwordHashing.getImportParallelism() : Math.max(1, hashingThreads / 2);
+        this.hashingPool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Creates the users of all the rows of the file, as {@link UserService#createUser(org.benetech.servicenet.service.dto.UserDTO)}
+     * does, but with the password of the row when it has one. Users without a password get a creation email with a
+     * link to choose one.
+     *
+     * @param reader  the file.
+     * @param results receives the results of the rows of each batch, in file order, once the batch is committed.
+     * @return the number of users created.
+     */
+    public long importUsers(UserImportReader reader, Consumer<List<UserImportResultDTO>> results) throws IOException {
+        long created = 0;
+        List<UserImportReader.Row> batch = new ArrayList<>(batchSize);
+        for (UserImportReader.Row row = reader.next(); row != null; row = reader.next()) {
+            batch.add(row);
+            if (batch.size() == batchSize) {
+                created += importBatch(batch, results);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            created += importBatch(batch, results);
+        }
+        log.debug("Imported {} users", created);
+        return created;
+    }
+
+    @Override
+    public void destroy() {
+        hashingPool.shutdown();
+    }
+
+    private int importBatch(List<UserImportReader.Row> rows, Consumer<List<UserImportResultDTO>> results) {
+        List<Candidate> candidates = new ArrayList<>(rows.size());
+        Set<String> logins = new HashSet<>();
+        Set<String> emails = new HashSet<>();
+        for (UserImportReader.Row row : rows) {
+            Candidate candidate = new Candidate(row);
+            candidates.add(candidate);
+            if (row.getUser() == null) {
+                candidate.reject(row.getError());
+                continue;
+            }
+            candidate.reject(validate(row.getUser()));
+            if (candidate.isRejected()) {
+                continue;
+            }
+            if (!logins.add(candidate.login)) {
+                candidate.reject(new UsernameAlreadyUsedException().getMessage());
+            } else if (candidate.email != null && !emails.add(candidate.email)) {
+                candidate.reject(new EmailAlreadyUsedException().getMessage());
+            }
+        }
+        rejectTaken(candidates, logins, emails);
+
+        candidates.stream()
+            .filter(candidate -> !candidate.isRejected())
+            .forEach(candidate -> candidate.hash = hashingPool.submit(() -> passwordEncoder.encode(candidate.password())));
+        List<User> users = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (candidate.hash != null) {
+                try {
+                    candidate.user = toUser(candidate, candidate.hash.join());
+                    users.add(candidate.user);
+                } catch (RuntimeException e) {
+                    candidate.reject(e.getMessage());
+                }
+            }
+        }
+        save(candidates, users);
+
+        results.accept(candidates.stream().map(Candidate::result).collect(Collectors.toList()));
+        return users.size();
+    }
+
+    private String validate(ImportedUserDTO user) {
+        if (user.getId() != null) {
+            return "A new user cannot already have an ID";
+        }
+        Set<ConstraintViolation<ImportedUserDTO>> violations = validator.validate(user);
+        if (!violations.isEmpty()) {
+            return violations.stream()
+                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+        }
+        if (user.getAuthorities() != null) {
+            for (String authority : user.getAuthorities()) {
+                if (!authorityRegistry.find(authority).isPresent()) {
+                    return "Unknown authority " + authority;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rejects the rows whose login or email belongs to an existing user, with one query each for the whole batch.
+     */
+    private void rejectTaken(List<Candidate> candidates, Set<String> logins, Set<String> emails) {
+        Set<String> takenLogins = logins.isEmpty() ? logins : new HashSet<>(userRepository.findLoginsByLoginIn(logins));
+        Set<String> takenEmails = emails.isEmpty() ? emails : new HashSet<>(userRepository.findEmailsByEmailIgnoreCaseIn(emails));
+        for (Candidate candidate : candidates) {
+            if (candidate.isRejected()) {
+                continue;
+            }
+            if (takenLogins.contains(candidate.login)) {
+                candidate.reject(new UsernameAlreadyUsedException().getMessage());
+            } else if (candidate.email != null && takenEmails.contains(candidate.email)) {
+                candidate.reject(new EmailAlreadyUsedException().getMessage());
+            }
+        }
+    }
+
+    private User toUser(Candidate candidate, String encryptedPassword) {
+        ImportedUserDTO userDTO = candidate.row.getUser();
+        User user = new User();
+        user.setLogin(candidate.login);
+        user.setFirstName(userDTO.getFirstName());
+        user.setLastName(userDTO.getLastName());
+        user.setEmail(candidate.email);
+        user.setImageUrl(userDTO.getImageUrl());
+        user.setLangKey(userDTO.getLangKey() == null ? Constants.DEFAULT_LANGUAGE : userDTO.getLangKey());
+        user.setPassword(encryptedPassword);
+        if (userDTO.getPassword() == null) {
+            user.setResetKey(RandomUtil.generateResetKey());
+            user.setResetDate(Instant.now());
+        }
+        user.setActivated(true);
+        if (userDTO.getAuthorities() != null) {
+            Set<Authority> authorities = userDTO.getAuthorities().stream()
+                .map(authorityRegistry::find)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toSet());
+            user.setAuthorities(authorities);
+        }
+        return user;
+    }
+
+    /**
+     * Inserts the users of the batch in one transaction. If one of them was created meanwhile by another request,
+     * the transaction can't be committed, and the batch is inserted again one user per transaction so that only the
+     * conflicting rows are rejected.
+     */
+    private void save(List<Candidate> candidates, List<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.execute(status -> {
+                userRepository.saveAll(users);
+                userRepository.flush();
+                return null;
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Retrying one row at a time a batch of imported users conflicting with a new user", e);
+            users.clear();
+            for (Candidate candidate : candidates) {
+                if (candidate.user != null) {
+                    saveOne(candidate, users);
+                }
+            }
+        }
+        users.stream()
+            .filter(user -> user.getResetKey() != null)
+            .forEach(mailService::sendCreationEmail);
+    }
+
+    private void saveOne(Candidate candidate, List<User> users) {
+        // the user of the rolled back batch may have been given an id and a version, start again from the row
+        User user = toUser(candidate, candidate.user.getPassword());
+        try {
+            transactionTemplate.execute(status -> userRepository.saveAndFlush(user));
+            candidate.user = user;
+            users.add(user);
+        } catch (DataIntegrityViolationException e) {
+            candidate.reject("Conflicts with a user created meanwhile");
+        }
+    }
+
+    /**
+     * A row on its way to becoming a user, or the reason it was rejected.
+     */
+    private static final class Candidate {
+
+        private final UserImportReader.Row row;
+
+        private final String login;
+
+        private final String email;
+
+        private String rejection;
+
+        private ForkJoinTask<String> hash;
+
+        private User user;
+
+        Candidate(UserImportReader.Row row) {
+            this.row = row;
+            ImportedUserDTO userDTO = row.getUser();
+            this.login = userDTO == null || userDTO.getLogin() == null ? null : userDTO.getLogin().toLowerCase(Locale.ENGLISH);
+            this.email = userDTO == null || userDTO.getEmail() == null ? null : userDTO.getEmail().toLowerCase(Locale.ENGLISH);
+        }
+
+        void reject(String rejection) {
+            if (rejection != null) {
+                this.rejection = rejection;
+                this.hash = null;
+                this.user = null;
+            }
+        }
+
+        boolean isRejected() {
+            return rejection != null;
+        }
+
+        String password() {
+            String password = row.getUser().getPassword();
+            return password == null ? RandomUtil.generatePassword() : password;
+        }
+
+        UserImportResultDTO result() {
+            return isRejected()
+                ? UserImportResultDTO.rejected(row.getLine(), login, rejection)
+                : UserImportResultDTO.created(row.getLine(), login);
+        }
+    }
+}
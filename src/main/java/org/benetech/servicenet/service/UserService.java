@@ -3,10 +3,15 @@ package org.benetech.servicenet.service;
 import org.benetech.servicenet.config.Constants;
 import org.benetech.servicenet.domain.Authority;
 import org.benetech.servicenet.domain.User;
-import org.benetech.servicenet.repository.AuthorityRepository;
+import org.benetech.servicenet.repository.UserCache;
 import org.benetech.servicenet.repository.UserRepository;
+import org.benetech.servicenet.repository.UserSearchRepository;
+import org.benetech.servicenet.repository.UserSummary;
 import org.benetech.servicenet.security.AuthoritiesConstants;
 import org.benetech.servicenet.security.SecurityUtils;
+import org.benetech.servicenet.security.TokenRevocations;
+import org.benetech.servicenet.security.UserSecuritySnapshots;
+import org.benetech.servicenet.service.dto.UserCursor;
 import org.benetech.servicenet.service.dto.UserDTO;
 
 import io.github.jhipster.security.RandomUtil;
@@ -14,16 +19,22 @@ import io.github.jhipster.security.RandomUtil;
 import org.benetech.servicenet.util.RequestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cache.CacheManager;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service class for managing users.
@@ -36,21 +47,32 @@ public class UserService {
 
     private final UserRepository userRepository;
 
+    private final UserSearchRepository userSearchRepository;
+
     private final PasswordEncoder passwordEncoder;
 
-    private final AuthorityRepository authorityRepository;
+    private final AuthorityRegistry authorityRegistry;
 
-    private final CacheManager cacheManager;
+    private final UserCache userCache;
 
     private final SendGridMailServiceImpl sendGridMailService;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, AuthorityRepository authorityRepository,
-        CacheManager cacheManager, SendGridMailServiceImpl sendGridMailService) {
+    private final UserSecuritySnapshots userSecuritySnapshots;
+
+    private final TokenRevocations tokenRevocations;
+
+    public UserService(UserRepository userRepository, UserSearchRepository userSearchRepository,
+        PasswordEncoder passwordEncoder, AuthorityRegistry authorityRegistry, UserCache userCache,
+        SendGridMailServiceImpl sendGridMailService, UserSecuritySnapshots userSecuritySnapshots,
+        TokenRevocations tokenRevocations) {
         this.userRepository = userRepository;
+        this.userSearchRepository = userSearchRepository;
         this.passwordEncoder = passwordEncoder;
-        this.authorityRepository = authorityRepository;
-        this.cacheManager = cacheManager;
+        this.authorityRegistry = authorityRegistry;
+        this.userCache = userCache;
         this.sendGridMailService = sendGridMailService;
+        this.userSecuritySnapshots = userSecuritySnapshots;
+        this.tokenRevocations = tokenRevocations;
     }
 
     public Optional<User> verifyEmail(String key) {
@@ -72,6 +94,7 @@ public class UserService {
                 user.setPassword(passwordEncoder.encode(newPassword));
                 user.setResetKey(null);
                 user.setResetDate(null);
+                incrementSecurityVersion(user);
                 this.clearUserCaches(user);
                 return user;
             });
@@ -118,7 +141,7 @@ public class UserService {
         // new user gets registration key
         newUser.setVerificationKey(RandomUtil.generateActivationKey());
         Set<Authority> authorities = new HashSet<>();
-        authorityRepository.findById(AuthoritiesConstants.USER).ifPresent(authorities::add);
+        authorityRegistry.find(AuthoritiesConstants.USER).ifPresent(authorities::add);
         newUser.setAuthorities(authorities);
         userRepository.save(newUser);
         this.clearUserCaches(newUser);
@@ -157,7 +180,7 @@ public class UserService {
         user.setActivated(true);
         if (userDTO.getAuthorities() != null) {
             Set<Authority> authorities = userDTO.getAuthorities().stream()
-                .map(authorityRepository::findById)
+                .map(authorityRegistry::find)
                 .filter(Optional::isPresent)
                 .map(Optional::get)
                 .collect(Collectors.toSet());
@@ -207,7 +230,9 @@ public class UserService {
             .map(Optional::get)
             .map(user -> {
                 boolean activated = !user.getActivated() && userDTO.isActivated();
-                this.clearUserCaches(user);
+                boolean deactivated = user.getActivated() && !userDTO.isActivated();
+                boolean activationChanged = user.getActivated() != userDTO.isActivated();
+                Set<Authority> previousAuthorities = new HashSet<>(user.getAuthorities());
                 user.setLogin(userDTO.getLogin().toLowerCase());
                 user.setFirstName(userDTO.getFirstName());
                 user.setLastName(userDTO.getLastName());
@@ -220,10 +245,16 @@ public class UserService {
                 Set<Authority> managedAuthorities = user.getAuthorities();
                 managedAuthorities.clear();
                 userDTO.getAuthorities().stream()
-                    .map(authorityRepository::findById)
+                    .map(authorityRegistry::find)
                     .filter(Optional::isPresent)
                     .map(Optional::get)
                     .forEach(managedAuthorities::add);
+                if (activationChanged || !previousAuthorities.equals(managedAuthorities)) {
+                    incrementSecurityVersion(user);
+                }
+                if (deactivated) {
+                    tokenRevocations.revokeUserTokens(user.getId());
+                }
                 this.clearUserCaches(user);
                 log.debug("Changed Information for User: {}", user);
                 if (activated) {
@@ -237,6 +268,7 @@ public class UserService {
     public void deleteUser(String login) {
         userRepository.findOneByLogin(login).ifPresent(user -> {
             userRepository.delete(user);
+            tokenRevocations.revokeUserTokens(user.getId());
             this.clearUserCaches(user);
             log.debug("Deleted User: {}", user);
         });
@@ -252,6 +284,7 @@ public class UserService {
                 }
                 String encryptedPassword = passwordEncoder.encode(newPassword);
                 user.setPassword(encryptedPassword);
+                incrementSecurityVersion(user);
                 this.clearUserCaches(user);
                 log.debug("Changed password for User: {}", user);
             });
@@ -259,12 +292,96 @@ public class UserService {
 
     @Transactional(readOnly = true)
     public Page<UserDTO> getAllManagedUsers(Pageable pageable) {
-        return userRepository.findAllByLoginNot(pageable, Constants.ANONYMOUS_USER).map(UserDTO::new);
+        Page<UserSummary> users = userRepository.findAllByLoginNot(Constants.ANONYMOUS_USER, pageable);
+        return new PageImpl<>(toUserDTOs(users.getContent()), users.getPageable(), users.getTotalElements());
+    }
+
+    /**
+     * @return the users after the cursor, in its order, without counting them.
+     */
+    @Transactional(readOnly = true)
+    public Slice<UserDTO> getManagedUsers(UserCursor cursor, int size) {
+        Pageable pageable = PageRequest.of(0, size, Sort.by(cursor.getDirection(), cursor.getProperty()));
+        String excluded = Constants.ANONYMOUS_USER;
+        String after = cursor.getAfter();
+        Slice<UserSummary> users;
+        if (after == null) {
+            users = userRepository.findSliceByLoginNot(excluded, pageable);
+        } else if (UserCursor.LOGIN.equals(cursor.getProperty())) {
+            users = cursor.getDirection().isAscending()
+                ? userRepository.findSliceByLoginNotAndLoginGreaterThan(excluded, after, pageable)
+                : userRepository.findSliceByLoginNotAndLoginLessThan(excluded, after, pageable);
+        } else {
+            UUID id = UUID.fromString(after);
+            users = cursor.getDirection().isAscending()
+                ? userRepository.findSliceByLoginNotAndIdGreaterThan(excluded, id, pageable)
+                : userRepository.findSliceByLoginNotAndIdLessThan(excluded, id, pageable);
+        }
+        return new SliceImpl<>(toUserDTOs(users.getContent()), users.getPageable(), users.hasNext());
+    }
+
+    /**
+     * @return the users best matching the search term, best first, see {@link UserSearchRepository}.
+     */
+    @Transactional(readOnly = true)
+    public List<UserDTO> searchUsers(String term, int limit) {
+        List<UUID> ids = userSearchRepository.searchIds(term, Constants.ANONYMOUS_USER, limit);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<UUID, UserSummary> users = new HashMap<>();
+        for (UserSummary user : userRepository.findSummariesByIdIn(ids)) {
+            users.put(user.getId(), user);
+        }
+        return toUserDTOs(ids.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList()));
+    }
+
+    /**
+     * Reads all users by id through a forward-only cursor, without offset or count queries, and hands them to the
+     * consumer {@link UserRepository#STREAM_FETCH_SIZE} at a time with their authorities. Users are read as
+     * projections, which the persistence context doesn't keep, so memory use doesn't grow with their number.
+     *
+     * @param users receives the users, a chunk at a time, while the cursor is open.
+     * @return the number of users read.
+     */
+    @Transactional(readOnly = true)
+    public long exportUsers(Consumer<List<UserDTO>> users) {
+        long exported = 0;
+        List<UserSummary> chunk = new ArrayList<>(UserRepository.STREAM_FETCH_SIZE);
+        try (Stream<UserSummary> summaries = userRepository.streamAllByLoginNotOrderById(Constants.ANONYMOUS_USER)) {
+            Iterator<UserSummary> iterator = summaries.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == UserRepository.STREAM_FETCH_SIZE || !iterator.hasNext()) {
+                    users.accept(toUserDTOs(chunk));
+                    exported += chunk.size();
+                    chunk.clear();
+                }
+            }
+        }
+        return exported;
+    }
+
+    /**
+     * Reads the authorities of all the users with one query, rather than loading each user's collection.
+     */
+    private List<UserDTO> toUserDTOs(List<UserSummary> users) {
+        if (users.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<UUID, Set<String>> authorities = new HashMap<>();
+        List<UUID> ids = users.stream().map(UserSummary::getId).collect(Collectors.toList());
+        for (Object[] row : userRepository.findAuthorityNamesByUserIdIn(ids)) {
+            authorities.computeIfAbsent((UUID) row[0], id -> new HashSet<>()).add((String) row[1]);
+        }
+        return users.stream()
+            .map(user -> new UserDTO(user, authorities.getOrDefault(user.getId(), new HashSet<>())))
+            .collect(Collectors.toList());
     }
 
     @Transactional(readOnly = true)
     public Optional<User> getUserWithAuthoritiesByLogin(String login) {
-        return userRepository.findOneWithAuthoritiesByLogin(login);
+        return userCache.findOneWithAuthoritiesByLogin(login);
     }
 
     @Transactional(readOnly = true)
@@ -274,7 +391,7 @@ public class UserService {
 
     @Transactional(readOnly = true)
     public Optional<User> getUserWithAuthorities() {
-        return SecurityUtils.getCurrentUserLogin().flatMap(userRepository::findOneWithAuthoritiesByLogin);
+        return SecurityUtils.getCurrentUserLogin().flatMap(userCache::findOneWithAuthoritiesByLogin);
     }
 
     /**
@@ -282,17 +399,25 @@ public class UserService {
      * @return a list of all the authorities.
      */
     public List<String> getAuthorities() {
-        return authorityRepository.findAll().stream().map(Authority::getName).collect(Collectors.toList());
+        return authorityRegistry.getNames();
     }
 
     public void sendActivationEmail(User user) {
         sendGridMailService.sendActivationEmail(user, RequestUtils.getBaseUrl());
     }
 
+    /**
+     * Marks a change to the user's password, authorities or activation, which invalidates its refresh tokens.
+     */
+    private void incrementSecurityVersion(User user) {
+        user.setSecurityVersion(user.getSecurityVersion() + 1);
+    }
+
+    /**
+     * {@link UserCache} is invalidated by {@link org.benetech.servicenet.repository.UserCacheListener} once the
+     * changes commit.
+     */
     private void clearUserCaches(User user) {
-        Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE)).evict(user.getLogin());
-        if (user.getEmail() != null) {
-            Objects.requireNonNull(cacheManager.getCache(UserRepository.USERS_BY_EMAIL_CACHE)).evict(user.getEmail());
-        }
+        userSecuritySnapshots.evict(user.getId());
     }
 }
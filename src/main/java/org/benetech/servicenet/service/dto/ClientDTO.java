@@ -22,6 +22,13 @@ public class ClientDTO {
     @Min(0)
     private Integer tokenValiditySeconds;
 
+    /**
+     * With client_credentials, an issued token is handed out again while it is valid for at least this many
+     * seconds. Empty or 0 issues a new token on every request.
+     */
+    @Min(0)
+    private Integer tokenReuseSeconds;
+
     public ClientDTO() {
         // Empty constructor needed for Jackson.
     }
@@ -49,4 +56,12 @@ public class ClientDTO {
     public void setTokenValiditySeconds(Integer tokenValiditySeconds) {
         this.tokenValiditySeconds = tokenValiditySeconds;
     }
+
+    public Integer getTokenReuseSeconds() {
+        return tokenReuseSeconds;
+    }
+
+    public void setTokenReuseSeconds(Integer tokenReuseSeconds) {
+        this.tokenReuseSeconds = tokenReuseSeconds;
+    }
 }
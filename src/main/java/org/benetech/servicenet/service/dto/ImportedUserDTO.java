@@ -0,0 +1,33 @@
+package org.benetech.servicenet.service.dto;
+
+import javax.validation.constraints.Size;
+
+/**
+ * A DTO representing a user read from an import file, with the password it is created with, if any.
+ */
+public class ImportedUserDTO extends UserDTO {
+
+    public static final int PASSWORD_MIN_LENGTH = 4;
+
+    public static final int PASSWORD_MAX_LENGTH = 100;
+
+    @Size(min = PASSWORD_MIN_LENGTH, max = PASSWORD_MAX_LENGTH)
+    private String password;
+
+    public ImportedUserDTO() {
+        // Empty constructor needed for Jackson.
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportedUserDTO{" + super.toString() + "} ";
+    }
+}
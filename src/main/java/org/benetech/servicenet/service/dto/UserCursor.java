@@ -0,0 +1,84 @@
+package org.benetech.servicenet.service.dto;
+
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Position in the list of users sorted by login or id, from which the next page is read by seeking to the first key
+ * after it instead of skipping all the users before it. Clients get it as an opaque token, see {@link #encode()}.
+ */
+public final class UserCursor {
+
+    public static final String LOGIN = "login";
+
+    public static final String ID = "id";
+
+    private final String property;
+
+    private final Sort.Direction direction;
+
+    private final String after;
+
+    private UserCursor(String property, Sort.Direction direction, String after) {
+        this.property = property;
+        this.direction = direction;
+        this.after = after;
+    }
+
+    /**
+     * @return the cursor before the first user in that order.
+     * @throws IllegalArgumentException if the users can't be sorted by that property with a cursor.
+     */
+    public static UserCursor first(String property, Sort.Direction direction) {
+        if (!LOGIN.equals(property) && !ID.equals(property)) {
+            throw new IllegalArgumentException("Users can only be read with a cursor by login or id");
+        }
+        return new UserCursor(property, direction, null);
+    }
+
+    /**
+     * @return the cursor after that user, in the same order.
+     */
+    public UserCursor after(UserDTO user) {
+        return new UserCursor(property, direction, LOGIN.equals(property) ? user.getLogin() : user.getId().toString());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token wasn't made by {@link #encode()}.
+     */
+    public static UserCursor decode(String token) {
+        String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", 3);
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed user cursor");
+        }
+        UserCursor cursor = first(parts[0], Sort.Direction.fromString(parts[1]));
+        if (ID.equals(cursor.property)) {
+            UUID.fromString(parts[2]);
+        }
+        return new UserCursor(cursor.property, cursor.direction, parts[2]);
+    }
+
+    public String encode() {
+        String cursor = property + ':' + direction.name().toLowerCase(Locale.ENGLISH) + ':' + after;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public Sort.Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return the login or id of the last user read, {@code null} before the first one.
+     */
+    public String getAfter() {
+        return after;
+    }
+}
@@ -5,6 +5,8 @@ import org.benetech.servicenet.config.Constants;
 
 import org.benetech.servicenet.domain.Authority;
 import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.repository.UserSummary;
+import org.apache.commons.lang3.StringUtils;
 
 import javax.validation.constraints.*;
 import java.time.Instant;
@@ -76,6 +78,23 @@ public class UserDTO {
             .collect(Collectors.toSet());
     }
 
+    public UserDTO(UserSummary user, Set<String> authorities) {
+        this.id = user.getId();
+        this.login = user.getLogin();
+        this.firstName = user.getFirstName();
+        this.lastName = user.getLastName();
+        this.email = user.getEmail();
+        this.activated = user.isActivated();
+        this.verified = StringUtils.isBlank(user.getVerificationKey());
+        this.imageUrl = user.getImageUrl();
+        this.langKey = user.getLangKey();
+        this.createdBy = user.getCreatedBy();
+        this.createdDate = user.getCreatedDate();
+        this.lastModifiedBy = user.getLastModifiedBy();
+        this.lastModifiedDate = user.getLastModifiedDate();
+        this.authorities = authorities;
+    }
+
     public UUID getId() {
         return id;
     }
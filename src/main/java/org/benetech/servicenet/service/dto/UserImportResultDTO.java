@@ -0,0 +1,66 @@
+package org.benetech.servicenet.service.dto;
+
+/**
+ * A DTO representing the outcome of importing one row of an import file.
+ */
+public class UserImportResultDTO {
+
+    public enum Status {
+        CREATED, REJECTED
+    }
+
+    private final long line;
+
+    private final String login;
+
+    private final Status status;
+
+    private final String message;
+
+    public UserImportResultDTO(long line, String login, Status status, String message) {
+        this.line = line;
+        this.login = login;
+        this.status = status;
+        this.message = message;
+    }
+
+    public static UserImportResultDTO created(long line, String login) {
+        return new UserImportResultDTO(line, login, Status.CREATED, null);
+    }
+
+    public static UserImportResultDTO rejected(long line, String login, String message) {
+        return new UserImportResultDTO(line, login, Status.REJECTED, message);
+    }
+
+    /**
+     * @return the line of the file the row starts on, counting from 1.
+     */
+    public long getLine() {
+        return line;
+    }
+
+    public String getLogin() {
+        return login;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return why the row was rejected, {@code null} if it was created.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "UserImportResultDTO{" +
+            "line=" + line +
+            ", login='" + login + '\'' +
+            ", status=" + status +
+            ", message='" + message + '\'' +
+            "}";
+    }
+}
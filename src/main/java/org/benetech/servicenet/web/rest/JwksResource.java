@@ -0,0 +1,50 @@
+package org.benetech.servicenet.web.rest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.benetech.servicenet.config.UaaProperties;
+import org.benetech.servicenet.security.JwtSigningKeys;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * REST controller serving the public JWT signing keys as a JSON Web Key Set.
+ * <p>
+ * The keys only change with the configuration, so the set is rendered once and served with an {@code ETag}
+ * and a {@code Cache-Control} max-age; resource servers revalidate with {@code If-None-Match} and get a
+ * {@code 304 Not Modified}.
+ */
+@RestController
+public class JwksResource {
+
+    private final String jwks;
+
+    private final String eTag;
+
+    private final CacheControl cacheControl;
+
+    public JwksResource(JwtSigningKeys jwtSigningKeys, UaaProperties uaaProperties, ObjectMapper objectMapper)
+        throws JsonProcessingException {
+        this.jwks = objectMapper.writeValueAsString(jwtSigningKeys.toJwkSet());
+        this.eTag = "\"" + DigestUtils.md5DigestAsHex(jwks.getBytes(StandardCharsets.UTF_8)) + "\"";
+        this.cacheControl = CacheControl.maxAge(uaaProperties.getSigning().getJwksMaxAgeSeconds(), TimeUnit.SECONDS).cachePublic();
+    }
+
+    /**
+     * {@code GET /.well-known/jwks.json} : get the keys tokens may be signed with.
+     *
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and the JWK set in body,
+     * or with status {@code 304 (Not Modified)} if the client's copy is current.
+     */
+    @GetMapping(value = "/.well-known/jwks.json", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getJwks() {
+        return ResponseEntity.ok().eTag(eTag).cacheControl(cacheControl).body(jwks);
+    }
+}
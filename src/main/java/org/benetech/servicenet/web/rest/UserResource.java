@@ -6,12 +6,18 @@ import org.benetech.servicenet.repository.UserRepository;
 import org.benetech.servicenet.security.AuthoritiesConstants;
 import org.benetech.servicenet.service.MailService;
 import org.benetech.servicenet.service.SendGridMailServiceImpl;
+import org.benetech.servicenet.service.UserExportWriter;
+import org.benetech.servicenet.service.UserImportReader;
+import org.benetech.servicenet.service.UserImportService;
 import org.benetech.servicenet.service.UserService;
+import org.benetech.servicenet.service.dto.UserCursor;
 import org.benetech.servicenet.service.dto.UserDTO;
+import org.benetech.servicenet.service.dto.UserImportResultDTO;
 import org.benetech.servicenet.web.rest.errors.BadRequestAlertException;
 import org.benetech.servicenet.web.rest.errors.EmailAlreadyUsedException;
 import org.benetech.servicenet.web.rest.errors.LoginAlreadyUsedException;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.jhipster.web.util.HeaderUtil;
 import io.github.jhipster.web.util.PaginationUtil;
 import io.github.jhipster.web.util.ResponseUtil;
@@ -22,17 +28,27 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * REST controller for managing users.
@@ -62,6 +78,14 @@ import java.util.*;
 @RequestMapping("/api")
 public class UserResource {
 
+    private static final String TEXT_CSV_VALUE = "text/csv";
+
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final int SEARCH_MIN_LENGTH = 3;
+
+    private static final int SEARCH_MAX_SIZE = 50;
+
     private final Logger log = LoggerFactory.getLogger(UserResource.class);
 
     @Value("${jhipster.clientApp.name}")
@@ -73,13 +97,20 @@ public class UserResource {
 
     private final MailService mailService;
 
+    private final UserImportService userImportService;
+
+    private final ObjectMapper objectMapper;
+
     @Autowired
     private SendGridMailServiceImpl sendGridMailService;
 
-    public UserResource(UserService userService, UserRepository userRepository, MailService mailService) {
+    public UserResource(UserService userService, UserRepository userRepository, MailService mailService,
+        UserImportService userImportService, ObjectMapper objectMapper) {
         this.userService = userService;
         this.userRepository = userRepository;
         this.mailService = mailService;
+        this.userImportService = userImportService;
+        this.objectMapper = objectMapper;
     }
 
     /**
@@ -115,6 +146,50 @@ public class UserResource {
         }
     }
 
+    /**
+     * {@code POST  /users/_import}  : Creates the users of a CSV or NDJSON file, see {@link UserImportReader}.
+     * <p>
+     * The file is read as it is received, and rows are created or rejected as by {@code POST /users}, a batch at a
+     * time. The result of each row is streamed back, one JSON object per line, as soon as its batch is committed: a
+     * rejected row doesn't stop the import.
+     *
+     * @param request the request, with the file as body.
+     * @param response the response, to which the results are written.
+     * @throws IOException if the file can't be read or the results written.
+     * @throws BadRequestAlertException {@code 400 (Bad Request)} if the CSV header is invalid.
+     */
+    @PostMapping(value = "/users/_import", consumes = {TEXT_CSV_VALUE, APPLICATION_NDJSON_VALUE},
+        produces = APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public void importUsers(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        log.debug("REST request to import Users : {}", request.getContentType());
+        UserImportReader reader;
+        try {
+            reader = MediaType.parseMediaType(request.getContentType()).isCompatibleWith(MediaType.valueOf(TEXT_CSV_VALUE))
+                ? UserImportReader.csv(request.getInputStream())
+                : UserImportReader.ndjson(request.getInputStream(), objectMapper);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), "userManagement", "invalidimport");
+        }
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        OutputStream out = response.getOutputStream();
+        try (UserImportReader rows = reader) {
+            userImportService.importUsers(rows, results -> {
+                try {
+                    for (UserImportResultDTO result : results) {
+                        out.write(objectMapper.writeValueAsBytes(result));
+                        out.write('\n');
+                    }
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
     /**
      * {@code PUT /users} : Updates an existing User.
      *
@@ -152,6 +227,140 @@ public class UserResource {
         return userService.getAllManagedUsers(pageable);
     }
 
+    /**
+     * {@code GET /users?cursor=} : get the users after a cursor, sorted by login or id, without counting them.
+     * <p>
+     * The first request sends an empty cursor, and a sort on {@code login} (the default) or {@code id}. When more
+     * users may follow, the {@code Link} header holds the URL of the next page, with the cursor to send next.
+     *
+     * @param cursor the cursor from the previous page, empty for the first one.
+     * @param pageable the page size and, for the first page, the sort.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the users.
+     * @throws BadRequestAlertException {@code 400 (Bad Request)} if the cursor or sort is invalid.
+     */
+    @GetMapping(value = "/users", params = "cursor")
+    public ResponseEntity<List<UserDTO>> getUsersAfter(@RequestParam("cursor") String cursor, Pageable pageable) {
+        UserCursor from;
+        try {
+            if (cursor.isEmpty()) {
+                Sort.Order order = pageable.getSort().stream().findFirst().orElse(Sort.Order.asc(UserCursor.LOGIN));
+                from = UserCursor.first(order.getProperty(), order.getDirection());
+            } else {
+                from = UserCursor.decode(cursor);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestAlertException(e.getMessage(), "userManagement", "invalidcursor");
+        }
+        Slice<UserDTO> users = userService.getManagedUsers(from, pageable.getPageSize());
+        HttpHeaders headers = new HttpHeaders();
+        if (users.hasNext()) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("cursor", from.after(users.getContent().get(users.getNumberOfElements() - 1)).encode())
+                .replaceQueryParam("page")
+                .toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return new ResponseEntity<>(users.getContent(), headers, HttpStatus.OK);
+    }
+
+    /**
+     * {@code GET /users/_search?q=} : search users by login, email, first name or last name.
+     * <p>
+     * Users containing the search term are returned in login order, or with {@code uaa.user-search.trigrams} on
+     * PostgreSQL, users holding a part similar to it are returned best match first.
+     *
+     * @param query the search term, at least {@value #SEARCH_MIN_LENGTH} characters long.
+     * @param size the maximum number of users returned, at most {@value #SEARCH_MAX_SIZE}.
+     * @return the {@link ResponseEntity} with status {@code 200 (OK)} and with body the matching users.
+     * @throws BadRequestAlertException {@code 400 (Bad Request)} if the search term is too short.
+     */
+    @GetMapping("/users/_search")
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public List<UserDTO> searchUsers(@RequestParam("q") String query,
+        @RequestParam(value = "size", defaultValue = "20") int size) {
+        log.debug("REST request to search Users : {}", query);
+        String term = query.trim();
+        if (term.length() < SEARCH_MIN_LENGTH) {
+            throw new BadRequestAlertException("The search term must be at least " + SEARCH_MIN_LENGTH +
+                " characters long", "userManagement", "invalidsearch");
+        }
+        return userService.searchUsers(term, Math.max(1, Math.min(size, SEARCH_MAX_SIZE)));
+    }
+
+    /**
+     * {@code GET /users/_export} : export all users, one JSON object per line.
+     * <p>
+     * Users are written in id order as they are read from the database, without offset or count queries. The
+     * response is compressed with gzip when the request accepts it.
+     *
+     * @param request the request.
+     * @param response the response, to which the users are written.
+     * @throws IOException if the users can't be written.
+     */
+    @GetMapping(value = "/users/_export", produces = APPLICATION_NDJSON_VALUE)
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public void exportUsers(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        exportUsers(request, response, APPLICATION_NDJSON_VALUE, "users.ndjson");
+    }
+
+    /**
+     * {@code GET /users/_export} : export all users as CSV, with the columns of {@link UserExportWriter#CSV_COLUMNS}.
+     *
+     * @param request the request.
+     * @param response the response, to which the users are written.
+     * @throws IOException if the users can't be written.
+     * @see #exportUsers(HttpServletRequest, HttpServletResponse)
+     */
+    @GetMapping(value = "/users/_export", produces = TEXT_CSV_VALUE)
+    @PreAuthorize("hasRole(\"" + AuthoritiesConstants.ADMIN + "\")")
+    public void exportUsersAsCsv(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        exportUsers(request, response, TEXT_CSV_VALUE, "users.csv");
+    }
+
+    private void exportUsers(HttpServletRequest request, HttpServletResponse response, String contentType,
+        String fileName) throws IOException {
+        log.debug("REST request to export Users : {}", contentType);
+        response.setContentType(contentType);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        OutputStream out = response.getOutputStream();
+        if (acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            // flushing each chunk of users sends it right away, instead of when the compressor's buffer fills up
+            out = new GZIPOutputStream(out, true);
+        }
+        try (UserExportWriter writer = TEXT_CSV_VALUE.equals(contentType)
+            ? UserExportWriter.csv(out)
+            : UserExportWriter.ndjson(out, objectMapper)) {
+            userService.exportUsers(users -> {
+                try {
+                    for (UserDTO user : users) {
+                        writer.write(user);
+                    }
+                    writer.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            if ("gzip".equalsIgnoreCase(parameters[0].trim())) {
+                return parameters.length == 1 || !parameters[1].trim().matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
     /**
      * Gets a list of all roles.
      * @return a string list of all roles.
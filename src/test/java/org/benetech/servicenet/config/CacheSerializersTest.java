@@ -0,0 +1,104 @@
+package org.benetech.servicenet.config;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import org.benetech.servicenet.domain.Authority;
+import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.repository.EvictedUser;
+import org.benetech.servicenet.repository.UserCredentials;
+import org.benetech.servicenet.security.AuthoritiesConstants;
+import org.benetech.servicenet.security.UserSecuritySnapshot;
+import org.benetech.servicenet.service.dto.UserDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link CacheSerializers}.
+ */
+public class CacheSerializersTest {
+
+    private InternalSerializationService serializationService;
+
+    @BeforeEach
+    public void init() {
+        SerializationConfig serializationConfig = new SerializationConfig();
+        CacheSerializers.register(serializationConfig);
+        serializationService = new DefaultSerializationServiceBuilder().setConfig(serializationConfig).build();
+    }
+
+    @Test
+    public void assertThatUsersSurviveARoundTrip() {
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setLogin("john");
+        user.setPassword("$2a$10$gSAhZrxMllrbgj/kkK9UceBPpChGWJA7SYIb1Mqo.n5aNLq1/oRrC");
+        user.setEmail("john@example.com");
+        user.setActivated(true);
+        user.setLangKey("en");
+        user.setResetDate(Instant.ofEpochSecond(1_700_000_000L, 123_456_000));
+        user.setSecurityVersion(7);
+        user.setVersion(12);
+        user.setCreatedBy("system");
+        user.setAuthorities(Set.of(authority(AuthoritiesConstants.USER), authority(AuthoritiesConstants.ADMIN)));
+
+        User copy = roundTrip(user);
+
+        assertThat(copy).isEqualToIgnoringGivenFields(user, "authorities");
+        assertThat(copy.getAuthorities()).containsExactlyInAnyOrderElementsOf(user.getAuthorities());
+        assertThat(copy.getFirstName()).isNull();
+    }
+
+    @Test
+    public void assertThatUserDTOsSurviveARoundTrip() {
+        UserDTO userDTO = new UserDTO();
+        userDTO.setId(UUID.randomUUID());
+        userDTO.setLogin("john");
+        userDTO.setVerified(true);
+        userDTO.setCreatedDate(Instant.now());
+        userDTO.setAuthorities(Set.of(AuthoritiesConstants.USER));
+
+        UserDTO copy = roundTrip(userDTO);
+
+        assertThat(copy).isEqualToComparingFieldByField(userDTO);
+    }
+
+    @Test
+    public void assertThatTombstonesSurviveARoundTrip() {
+        assertThat(roundTrip(new EvictedUser(4)).getVersion()).isEqualTo(4);
+    }
+
+    @Test
+    public void assertThatSnapshotsAndIdsSurviveARoundTrip() {
+        UserSecuritySnapshot snapshot = new UserSecuritySnapshot(UUID.randomUUID(), "john", true,
+            Arrays.asList(AuthoritiesConstants.USER, AuthoritiesConstants.ADMIN), 3);
+
+        assertThat(roundTrip(snapshot)).isEqualToComparingFieldByField(snapshot);
+        assertThat(roundTrip(snapshot.getId())).isEqualTo(snapshot.getId());
+    }
+
+    @Test
+    public void assertThatCredentialsSurviveARoundTrip() {
+        UserCredentials credentials = new UserCredentials(UUID.randomUUID(), "john", null, "hash", true, 2, 5,
+            Arrays.asList(AuthoritiesConstants.USER));
+
+        assertThat(roundTrip(credentials)).isEqualToComparingFieldByField(credentials);
+    }
+
+    private <T> T roundTrip(T object) {
+        return serializationService.toObject(serializationService.toData(object));
+    }
+
+    private static Authority authority(String name) {
+        Authority authority = new Authority();
+        authority.setName(name);
+        return authority;
+    }
+}
@@ -0,0 +1,36 @@
+package org.benetech.servicenet.config;
+
+import com.hazelcast.core.HazelcastInstance;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit tests for {@link TieredCacheManager}.
+ */
+public class TieredCacheManagerTest {
+
+    @Test
+    public void assertThatCachesWrittenToHazelcastCantHaveALocalTier() {
+        Map<String, ApplicationProperties.Tier> tiers = new HashMap<>();
+        tiers.put("oauthClientDetails", new ApplicationProperties.Tier());
+        ApplicationProperties.Tier distributedOnly = new ApplicationProperties.Tier();
+        distributedOnly.setPolicy(ApplicationProperties.TierPolicy.DISTRIBUTED_ONLY);
+        tiers.put("userCredentials", distributedOnly);
+
+        assertThatCode(() -> new TieredCacheManager(mock(HazelcastInstance.class), tiers,
+            List.of("users", "userCredentials"), new SimpleMeterRegistry())).doesNotThrowAnyException();
+
+        tiers.put("users", new ApplicationProperties.Tier());
+
+        assertThatIllegalArgumentException().isThrownBy(() -> new TieredCacheManager(mock(HazelcastInstance.class), tiers,
+            List.of("users", "userCredentials"), new SimpleMeterRegistry())).withMessageContaining("users");
+    }
+}
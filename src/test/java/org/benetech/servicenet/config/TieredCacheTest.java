@@ -0,0 +1,93 @@
+package org.benetech.servicenet.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link TieredCache}.
+ */
+public class TieredCacheTest {
+
+    private ConcurrentMapCache distributed;
+
+    private TieredCache cache;
+
+    @BeforeEach
+    public void init() {
+        distributed = new ConcurrentMapCache("clients");
+        cache = new TieredCache(distributed, new ApplicationProperties.Tier());
+    }
+
+    @Test
+    public void assertThatReadsAreAnsweredLocallyOnceLoaded() {
+        distributed.put("web", "secret");
+
+        assertThat(cache.get("web", String.class)).isEqualTo("secret");
+        assertThat(cache.get("web", String.class)).isEqualTo("secret");
+        assertThat(cache.get("mobile")).isNull();
+
+        assertThat(cache.localStats().hitCount()).isEqualTo(1);
+        assertThat(cache.localStats().missCount()).isEqualTo(2);
+        assertThat(cache.distributedHits()).isEqualTo(1);
+        assertThat(cache.distributedMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void assertThatWritesInvalidateTheLocalEntry() {
+        cache.put("web", "secret");
+        cache.get("web");
+
+        cache.put("web", "rotated");
+        assertThat(cache.get("web", String.class)).isEqualTo("rotated");
+
+        cache.evict("web");
+        assertThat(cache.get("web")).isNull();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void assertThatChangesMadeElsewhereAreSeenOnceInvalidated() {
+        cache.put("web", "secret");
+        cache.get("web");
+        ((Map<Object, Object>) cache.getNativeCache()).put("web", "rotated");
+
+        assertThat(cache.get("web", String.class)).isEqualTo("secret");
+        cache.invalidateLocal("web");
+        assertThat(cache.get("web", String.class)).isEqualTo("rotated");
+    }
+
+    @Test
+    public void assertThatAReadRacingWithAnInvalidationIsNotKept() {
+        Cache racing = new ConcurrentMapCache("clients") {
+            @Override
+            public ValueWrapper get(Object key) {
+                ValueWrapper value = super.get(key);
+                // the entry changes, and the invalidation arrives, while this read is in flight
+                cache.invalidateLocal(key);
+                return value;
+            }
+        };
+        racing.put("web", "secret");
+        cache = new TieredCache(racing, new ApplicationProperties.Tier());
+
+        cache.get("web");
+        cache.get("web");
+
+        assertThat(cache.localStats().hitCount()).isZero();
+    }
+
+    @Test
+    public void assertThatLoadedValuesAreKeptLocally() {
+        assertThat(cache.get("web", () -> "secret")).isEqualTo("secret");
+        assertThat(cache.get("web", () -> "other")).isEqualTo("secret");
+
+        assertThat(distributed.get("web", String.class)).isEqualTo("secret");
+        assertThat(cache.localStats().hitCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,102 @@
+package org.benetech.servicenet.repository;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.benetech.servicenet.ServiceNetAuthApp;
+import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.security.AuthoritiesConstants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link UserCacheListener}, outside of a test transaction so that changes commit and the
+ * listener's invalidations reach the cache.
+ */
+@SpringBootTest(classes = ServiceNetAuthApp.class)
+public class UserCacheListenerIT {
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private AuthorityRepository authorityRepository;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private Cache users;
+
+    private String login;
+
+    private UUID id;
+
+    @BeforeEach
+    public void init() {
+        users = cacheManager.getCache(UserCache.USERS_CACHE);
+        login = "cache-listener-" + RandomStringUtils.randomAlphabetic(5).toLowerCase();
+        User user = new User();
+        user.setLogin(login);
+        user.setPassword(RandomStringUtils.random(60));
+        user.setActivated(true);
+        user.setEmail(login + "@localhost");
+        user.setLangKey("en");
+        user.setAuthorities(new HashSet<>(Collections.singleton(authorityRepository.findById(AuthoritiesConstants.USER).get())));
+        id = userRepository.saveAndFlush(user).getId();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        userRepository.findById(id).ifPresent(userRepository::delete);
+        users.evict(id);
+    }
+
+    @Test
+    public void assertThatUpdatesAndDeletesLeaveTombstones() {
+        assertThat(userCache.findOneWithAuthoritiesByLogin(login)).isPresent();
+        assertThat(users.get(id).get()).isInstanceOf(User.class);
+        long version = ((User) users.get(id).get()).getVersion();
+
+        // only the authorities change: the version bump is what makes Hibernate call @PostUpdate
+        transactionTemplate.execute(status -> {
+            User user = userRepository.findOneWithAuthoritiesByLogin(login).get();
+            user.getAuthorities().add(authorityRepository.findById(AuthoritiesConstants.ADMIN).get());
+            return null;
+        });
+
+        assertTombstone(version + 1);
+        assertThat(userCache.findOneWithAuthoritiesByLogin(login).get().getAuthorities())
+            .extracting("name").containsExactlyInAnyOrder(AuthoritiesConstants.USER, AuthoritiesConstants.ADMIN);
+        assertThat(((User) users.get(id).get()).getVersion()).isEqualTo(version + 1);
+
+        transactionTemplate.execute(status -> {
+            userRepository.delete(userRepository.findById(id).get());
+            return null;
+        });
+
+        assertTombstone(Long.MAX_VALUE);
+        assertThat(userCache.findOneWithAuthoritiesByLogin(login)).isEmpty();
+    }
+
+    private void assertTombstone(long version) {
+        Object cached = users.get(id).get();
+        assertThat(cached).isInstanceOf(EvictedUser.class);
+        assertThat(((EvictedUser) cached).getVersion()).isEqualTo(version);
+    }
+}
@@ -0,0 +1,179 @@
+package org.benetech.servicenet.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.benetech.servicenet.domain.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link UserCache}.
+ */
+public class UserCacheTest {
+
+    private UserRepository userRepository;
+
+    private MeterRegistry meterRegistry;
+
+    private UserCache userCache;
+
+    private User user;
+
+    @BeforeEach
+    public void init() {
+        userRepository = mock(UserRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        userCache = new UserCache(userRepository, new ConcurrentMapCacheManager(), meterRegistry);
+        user = new User();
+        user.setId(UUID.randomUUID());
+        user.setLogin("john");
+        user.setEmail("john@example.com");
+        when(userRepository.findOneWithAuthoritiesByLogin("john")).thenReturn(Optional.of(user));
+    }
+
+    @Test
+    public void assertThatLoginAndEmailShareOneCachedUser() {
+        userCache.findOneWithAuthoritiesByLogin("john");
+
+        assertThat(userCache.findOneWithAuthoritiesByLogin("john")).contains(user);
+        assertThat(userCache.findOneWithAuthoritiesByEmailIgnoreCase("John@Example.com")).contains(user);
+        verify(userRepository).findOneWithAuthoritiesByLogin("john");
+        verify(userRepository, times(0)).findOneWithAuthoritiesByEmailIgnoreCase("John@Example.com");
+    }
+
+    @Test
+    public void assertThatEvictionForgetsTheUserUnderAllKeys() {
+        userCache.findOneWithAuthoritiesByLogin("john");
+        when(userRepository.findOneWithAuthoritiesByEmailIgnoreCase("john@example.com")).thenReturn(Optional.of(user));
+
+        userCache.invalidate(user.getId(), 1);
+        userCache.findOneWithAuthoritiesByEmailIgnoreCase("john@example.com");
+
+        verify(userRepository).findOneWithAuthoritiesByEmailIgnoreCase("john@example.com");
+    }
+
+    @Test
+    public void assertThatCredentialsShareTheIndexesAndEviction() {
+        List<Object[]> rows = Arrays.asList(
+            new Object[] {user.getId(), "john", "john@example.com", "hash", true, 1L, 0L, "ROLE_USER"},
+            new Object[] {user.getId(), "john", "john@example.com", "hash", true, 1L, 0L, "ROLE_ADMIN"});
+        when(userRepository.findCredentialsByLogin("john")).thenReturn(rows);
+        userCache.findOneWithAuthoritiesByLogin("john");
+
+        UserCredentials credentials = userCache.findCredentialsByLogin("john").orElseThrow();
+        userCache.findCredentialsByLogin("john");
+        userCache.invalidate(user.getId(), 1);
+        userCache.findCredentialsByLogin("john");
+
+        assertThat(credentials.getAuthorities()).containsExactly("ROLE_USER", "ROLE_ADMIN");
+        assertThat(credentials.getSecurityVersion()).isEqualTo(1);
+        verify(userRepository, times(2)).findCredentialsByLogin("john");
+    }
+
+    @Test
+    public void assertThatConcurrentMissesLoadOnce() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(userRepository.findOneWithAuthoritiesByLogin("john")).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await();
+            return Optional.of(user);
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Optional<User>> first = executor.submit(() -> userCache.findOneWithAuthoritiesByLogin("john"));
+            loading.await();
+            Future<Optional<User>> second = executor.submit(() -> userCache.findOneWithAuthoritiesByLogin("john"));
+            Counter coalesced = meterRegistry.get("user.cache.loads")
+                .tag("cache", UserCache.USERS_CACHE).tag("result", "coalesced").counter();
+            while (coalesced.count() == 0) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).contains(user);
+            assertThat(second.get(5, TimeUnit.SECONDS)).contains(user);
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(userRepository).findOneWithAuthoritiesByLogin("john");
+    }
+
+    @Test
+    public void assertThatOlderVersionsDontReplaceAnInvalidation() {
+        userCache.invalidate(user.getId(), 1);
+        userCache.findOneWithAuthoritiesByLogin("john");
+        userCache.findOneWithAuthoritiesByLogin("john");
+        verify(userRepository, times(2)).findOneWithAuthoritiesByLogin("john");
+
+        User updated = new User();
+        updated.setId(user.getId());
+        updated.setLogin("john");
+        updated.setVersion(1);
+        when(userRepository.findOneWithAuthoritiesByLogin("john")).thenReturn(Optional.of(updated));
+        userCache.findOneWithAuthoritiesByLogin("john");
+
+        assertThat(userCache.findOneWithAuthoritiesByLogin("john")).contains(updated);
+        verify(userRepository, times(3)).findOneWithAuthoritiesByLogin("john");
+    }
+
+    @Test
+    public void assertThatInvalidationWaitsForTheTransactionToCommit() {
+        userCache.findOneWithAuthoritiesByLogin("john");
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            userCache.invalidate(user.getId(), 1);
+            userCache.findOneWithAuthoritiesByLogin("john");
+            userCache.findOneWithAuthoritiesByLogin("john");
+            verify(userRepository, times(3)).findOneWithAuthoritiesByLogin("john");
+
+            TransactionSynchronizationUtils.triggerAfterCommit();
+            TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        userCache.findOneWithAuthoritiesByLogin("john");
+        userCache.findOneWithAuthoritiesByLogin("john");
+
+        // the copy of version 0 loaded again after the commit is older than the invalidation
+        verify(userRepository, times(5)).findOneWithAuthoritiesByLogin("john");
+    }
+
+    @Test
+    public void assertThatOldLoginIsNotFoundAfterARename() {
+        userCache.findOneWithAuthoritiesByLogin("john");
+        User renamed = new User();
+        renamed.setId(user.getId());
+        renamed.setLogin("jack");
+        renamed.setEmail(user.getEmail());
+        renamed.setVersion(1);
+        when(userRepository.findOneWithAuthoritiesByLogin("jack")).thenReturn(Optional.of(renamed));
+        when(userRepository.findOneWithAuthoritiesByLogin("john")).thenReturn(Optional.empty());
+
+        userCache.invalidate(user.getId(), 1);
+        assertThat(userCache.findOneWithAuthoritiesByLogin("jack")).contains(renamed);
+
+        assertThat(userCache.findOneWithAuthoritiesByLogin("john")).isEmpty();
+    }
+}
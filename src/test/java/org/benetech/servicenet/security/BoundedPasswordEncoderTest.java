@@ -0,0 +1,102 @@
+package org.benetech.servicenet.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+/**
+ * Unit tests for {@link BoundedPasswordEncoder}.
+ */
+public class BoundedPasswordEncoderTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private MeterRegistry meterRegistry;
+
+    private BoundedPasswordEncoder passwordEncoder;
+
+    private ExecutorService callers;
+
+    @BeforeEach
+    public void init() {
+        meterRegistry = new SimpleMeterRegistry();
+        passwordEncoder = new BoundedPasswordEncoder(new SlowPasswordEncoder(), 1, 1, 7, meterRegistry);
+        callers = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    public void destroy() {
+        release.countDown();
+        callers.shutdownNow();
+        passwordEncoder.destroy();
+    }
+
+    @Test
+    public void assertThatHashingRunsOnThePool() {
+        release.countDown();
+        assertThat(passwordEncoder.encode("secret")).isEqualTo("encoded-secret");
+        assertThat(passwordEncoder.matches("secret", "encoded-secret")).isTrue();
+    }
+
+    @Test
+    public void assertThatRequestsBeyondTheQueueAreRejected() throws Exception {
+        Future<Boolean> running = callers.submit(() -> passwordEncoder.matches("one", "encoded-one"));
+        Future<Boolean> queued = callers.submit(() -> passwordEncoder.matches("two", "encoded-two"));
+        awaitQueued(1);
+
+        assertThatExceptionOfType(PasswordHashingUnavailableException.class)
+            .isThrownBy(() -> passwordEncoder.matches("three", "encoded-three"))
+            .satisfies(e -> {
+                assertThat(e.getRetryAfterSeconds()).isEqualTo(7);
+                assertThat(e.getHttpErrorCode()).isEqualTo(503);
+            });
+        assertThat(meterRegistry.get("password.hashing.rejections").counter().count()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private void awaitQueued(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get("executor.queued").gauge().value() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(meterRegistry.get("executor.queued").gauge().value()).isEqualTo(expected);
+    }
+
+    private class SlowPasswordEncoder implements PasswordEncoder {
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            awaitRelease();
+            return "encoded-" + rawPassword;
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            awaitRelease();
+            return encodedPassword.equals("encoded-" + rawPassword);
+        }
+
+        private void awaitRelease() {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
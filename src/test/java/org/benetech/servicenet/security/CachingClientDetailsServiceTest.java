@@ -0,0 +1,69 @@
+package org.benetech.servicenet.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.security.oauth2.provider.ClientDetails;
+import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.NoSuchClientException;
+import org.springframework.security.oauth2.provider.client.BaseClientDetails;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link CachingClientDetailsService}.
+ */
+public class CachingClientDetailsServiceTest {
+
+    private ClientDetailsService delegate;
+
+    private Cache cache;
+
+    private MeterRegistry meterRegistry;
+
+    private CachingClientDetailsService clientDetailsService;
+
+    @BeforeEach
+    public void init() {
+        delegate = mock(ClientDetailsService.class);
+        cache = new ConcurrentMapCache("oauthClientDetails");
+        meterRegistry = new SimpleMeterRegistry();
+        clientDetailsService = new CachingClientDetailsService(delegate, cache, meterRegistry);
+    }
+
+    @Test
+    public void assertThatClientIsLoadedOnceUntilEvicted() {
+        BaseClientDetails client = new BaseClientDetails("external", null, "external", "client_credentials", null);
+        when(delegate.loadClientByClientId("external")).thenReturn(client);
+
+        ClientDetails first = clientDetailsService.loadClientByClientId("external");
+        ClientDetails second = clientDetailsService.loadClientByClientId("external");
+        assertThat(first).isEqualTo(client);
+        assertThat(second).isEqualTo(client);
+        verify(delegate, times(1)).loadClientByClientId("external");
+
+        cache.evict("external");
+        clientDetailsService.loadClientByClientId("external");
+        verify(delegate, times(2)).loadClientByClientId("external");
+
+        assertThat(meterRegistry.get(CachingClientDetailsService.METRIC_NAME).tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get(CachingClientDetailsService.METRIC_NAME).tag("result", "miss").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void assertThatUnknownClientIsNotCached() {
+        when(delegate.loadClientByClientId("unknown")).thenThrow(new NoSuchClientException("No client with requested id: unknown"));
+
+        assertThatExceptionOfType(NoSuchClientException.class)
+            .isThrownBy(() -> clientDetailsService.loadClientByClientId("unknown"));
+        assertThat(cache.get("unknown")).isNull();
+    }
+}
@@ -0,0 +1,146 @@
+package org.benetech.servicenet.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.benetech.servicenet.config.UaaProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+import java.security.KeyPairGenerator;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link CachingJwtTokenStore}.
+ */
+public class CachingJwtTokenStoreTest {
+
+    private final AtomicInteger decodes = new AtomicInteger();
+
+    private KeyRotatingJwtAccessTokenConverter converter;
+
+    private MeterRegistry meterRegistry;
+
+    private UaaProperties.TokenVerificationCache properties;
+
+    @BeforeEach
+    public void init() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        JwtSigningKey key = new JwtSigningKey("selfsigned", JwtSigningKey.RS256, generator.generateKeyPair());
+        converter = new KeyRotatingJwtAccessTokenConverter(new JwtSigningKeys(List.of(key), key.getId())) {
+            @Override
+            public Map<String, Object> decode(String token) {
+                decodes.incrementAndGet();
+                return super.decode(token);
+            }
+        };
+        meterRegistry = new SimpleMeterRegistry();
+        properties = new UaaProperties().getTokenVerificationCache();
+    }
+
+    @Test
+    public void assertThatTokensAreVerifiedOnce() {
+        CachingJwtTokenStore tokenStore = new CachingJwtTokenStore(converter, properties, meterRegistry);
+        String token = issue(60_000L);
+
+        OAuth2Authentication first = tokenStore.readAuthentication(token);
+        OAuth2Authentication second = tokenStore.readAuthentication(token);
+        tokenStore.readAccessToken(token);
+
+        assertThat(decodes.get()).isEqualTo(1);
+        assertThat(second.getName()).isEqualTo("user");
+        assertThat(second).isNotSameAs(first);
+        assertThat(meterRegistry.get(CachingJwtTokenStore.METRIC_NAME).tag("result", "cached").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get(CachingJwtTokenStore.METRIC_NAME).tag("result", "computed").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void assertThatExpiredTokensAreNotRemembered() {
+        CachingJwtTokenStore tokenStore = new CachingJwtTokenStore(converter, properties, meterRegistry);
+        String token = issue(-1_000L);
+
+        assertThat(tokenStore.readAccessToken(token).isExpired()).isTrue();
+        int decodesOnMiss = decodes.get();
+        tokenStore.readAccessToken(token);
+
+        assertThat(decodes.get()).isEqualTo(2 * decodesOnMiss);
+    }
+
+    @Test
+    public void assertThatDisabledCacheVerifiesEveryTime() {
+        properties.setEnabled(false);
+        CachingJwtTokenStore tokenStore = new CachingJwtTokenStore(converter, properties, meterRegistry);
+        String token = issue(60_000L);
+
+        tokenStore.readAuthentication(token);
+        tokenStore.readAuthentication(token);
+
+        assertThat(decodes.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void assertThatRefreshTokensAreReadButNotRemembered() {
+        CachingJwtTokenStore tokenStore = new CachingJwtTokenStore(converter, properties, meterRegistry);
+        String refreshToken = issueWithRefreshToken().getRefreshToken().getValue();
+
+        assertThat(tokenStore.readAuthentication(refreshToken).getName()).isEqualTo("user");
+        assertThat(tokenStore.readAuthenticationForRefreshToken(tokenStore.readRefreshToken(refreshToken)).getName())
+            .isEqualTo("user");
+        assertThatThrownBy(() -> tokenStore.readAccessToken(refreshToken)).isInstanceOf(InvalidTokenException.class);
+        assertThat(meterRegistry.get(CachingJwtTokenStore.METRIC_NAME).tag("result", "computed").counter().count()).isZero();
+    }
+
+    @Test
+    public void assertThatRememberedTokensAreCheckedForRevocation() {
+        CachingJwtTokenStore tokenStore = new CachingJwtTokenStore(converter, properties, meterRegistry);
+        TokenRevocations tokenRevocations = mock(TokenRevocations.class);
+        tokenStore.setTokenRevocations(tokenRevocations);
+        String token = issue(60_000L);
+        tokenStore.readAuthentication(token);
+
+        when(tokenRevocations.isRevoked(any())).thenReturn(true);
+
+        assertThatThrownBy(() -> tokenStore.readAuthentication(token)).isInstanceOf(InvalidTokenException.class);
+        assertThatThrownBy(() -> tokenStore.readAccessToken(token)).isInstanceOf(InvalidTokenException.class);
+    }
+
+    private String issue(long validForMillis) {
+        OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "web_app", AuthorityUtils.createAuthorityList("ROLE_USER"),
+            true, Set.of("openid"), Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+        OAuth2Authentication authentication = new OAuth2Authentication(request,
+            new UsernamePasswordAuthenticationToken("user", null, AuthorityUtils.createAuthorityList("ROLE_USER")));
+        DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("token");
+        accessToken.setExpiration(new Date(System.currentTimeMillis() + validForMillis));
+        return converter.enhance(accessToken, authentication).getValue();
+    }
+
+    private OAuth2AccessToken issueWithRefreshToken() {
+        OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "web_app", AuthorityUtils.createAuthorityList("ROLE_USER"),
+            true, Set.of("openid"), Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+        OAuth2Authentication authentication = new OAuth2Authentication(request,
+            new UsernamePasswordAuthenticationToken("user", null, AuthorityUtils.createAuthorityList("ROLE_USER")));
+        DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("token");
+        accessToken.setExpiration(new Date(System.currentTimeMillis() + 60_000L));
+        accessToken.setRefreshToken(new DefaultOAuth2RefreshToken("refresh"));
+        return converter.enhance(accessToken, authentication);
+    }
+}
@@ -0,0 +1,67 @@
+package org.benetech.servicenet.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.benetech.servicenet.config.UaaProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link ClientSecretVerificationCache}.
+ */
+public class ClientSecretVerificationCacheTest {
+
+    private static final String STORED_HASH = "$2a$10$storedhashstoredhashstoredhashstoredhashstoredhashsto";
+
+    private static final String ROTATED_HASH = "$2a$10$rotatedhashrotatedhashrotatedhashrotatedhashrotatedh";
+
+    private PasswordEncoder delegate;
+
+    private ClientSecretVerificationCache verificationCache;
+
+    private PasswordEncoder passwordEncoder;
+
+    @BeforeEach
+    public void init() {
+        delegate = mock(PasswordEncoder.class);
+        verificationCache = new ClientSecretVerificationCache(new UaaProperties(), new SimpleMeterRegistry());
+        passwordEncoder = verificationCache.wrap(delegate);
+    }
+
+    @Test
+    public void assertThatSuccessfulVerificationIsRemembered() {
+        when(delegate.matches("secret", STORED_HASH)).thenReturn(true);
+
+        assertThat(passwordEncoder.matches("secret", STORED_HASH)).isTrue();
+        assertThat(passwordEncoder.matches("secret", STORED_HASH)).isTrue();
+        verify(delegate, times(1)).matches("secret", STORED_HASH);
+
+        verificationCache.clear();
+        assertThat(passwordEncoder.matches("secret", STORED_HASH)).isTrue();
+        verify(delegate, times(2)).matches("secret", STORED_HASH);
+    }
+
+    @Test
+    public void assertThatFailedVerificationIsNotRemembered() {
+        when(delegate.matches("wrong", STORED_HASH)).thenReturn(false);
+
+        assertThat(passwordEncoder.matches("wrong", STORED_HASH)).isFalse();
+        assertThat(passwordEncoder.matches("wrong", STORED_HASH)).isFalse();
+        verify(delegate, times(2)).matches("wrong", STORED_HASH);
+    }
+
+    @Test
+    public void assertThatRotatedSecretIsVerifiedAgain() {
+        when(delegate.matches("secret", STORED_HASH)).thenReturn(true);
+        when(delegate.matches("secret", ROTATED_HASH)).thenReturn(false);
+
+        assertThat(passwordEncoder.matches("secret", STORED_HASH)).isTrue();
+        assertThat(passwordEncoder.matches("secret", ROTATED_HASH)).isFalse();
+    }
+}
@@ -0,0 +1,110 @@
+package org.benetech.servicenet.security;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.benetech.servicenet.config.UaaProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+
+import java.io.Serializable;
+import java.security.KeyPairGenerator;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link ClientTokenReuse}.
+ */
+public class ClientTokenReuseTest {
+
+    private final Map<String, ClientTokenReuse.ReusableToken> reusableTokens = new ConcurrentHashMap<>();
+
+    private MeterRegistry meterRegistry;
+
+    private DefaultTokenServices tokenServices;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void init() throws Exception {
+        IMap<String, ClientTokenReuse.ReusableToken> map = mock(IMap.class);
+        when(map.get(anyString())).thenAnswer(invocation -> reusableTokens.get(invocation.<String>getArgument(0)));
+        when(map.putIfAbsent(anyString(), any(ClientTokenReuse.ReusableToken.class), anyLong(), any(TimeUnit.class)))
+            .thenAnswer(invocation -> reusableTokens.putIfAbsent(invocation.getArgument(0), invocation.getArgument(1)));
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        when(hazelcastInstance.<String, ClientTokenReuse.ReusableToken>getMap(ClientTokenReuse.MAP_NAME)).thenReturn(map);
+        meterRegistry = new SimpleMeterRegistry();
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        JwtSigningKey key = new JwtSigningKey("selfsigned", JwtSigningKey.RS256, generator.generateKeyPair());
+        KeyRotatingJwtAccessTokenConverter converter = new KeyRotatingJwtAccessTokenConverter(
+            new JwtSigningKeys(List.of(key), key.getId()));
+        CachingJwtTokenStore tokenStore = new CachingJwtTokenStore(converter, new UaaProperties().getTokenVerificationCache(), meterRegistry);
+        tokenStore.setClientTokenReuse(new ClientTokenReuse(hazelcastInstance, meterRegistry));
+        tokenServices = new DefaultTokenServices();
+        tokenServices.setTokenStore(tokenStore);
+        tokenServices.setTokenEnhancer(converter);
+        tokenServices.setAccessTokenValiditySeconds(300);
+    }
+
+    @Test
+    public void assertThatTokensAreReusedWithinTheWindow() {
+        String first = tokenServices.createAccessToken(clientAuthentication("ROLE_EXTERNAL", 60)).getValue();
+        String second = tokenServices.createAccessToken(clientAuthentication("ROLE_EXTERNAL", 60)).getValue();
+
+        assertThat(second).isEqualTo(first);
+        assertThat(meterRegistry.get("oauth.client.token.reuse").tag("result", "reused").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void assertThatOtherAuthoritiesGetTheirOwnToken() {
+        String first = tokenServices.createAccessToken(clientAuthentication("ROLE_EXTERNAL", 60)).getValue();
+        String second = tokenServices.createAccessToken(clientAuthentication("ROLE_ADMIN", 60)).getValue();
+
+        assertThat(second).isNotEqualTo(first);
+        assertThat(reusableTokens).hasSize(2);
+    }
+
+    @Test
+    public void assertThatTokensAreNotReusedWithoutAWindow() {
+        String first = tokenServices.createAccessToken(clientAuthentication("ROLE_EXTERNAL", 0)).getValue();
+        String second = tokenServices.createAccessToken(clientAuthentication("ROLE_EXTERNAL", 0)).getValue();
+
+        assertThat(second).isNotEqualTo(first);
+        assertThat(reusableTokens).isEmpty();
+    }
+
+    @Test
+    public void assertThatTokensAreNotReusedPastTheWindow() {
+        // a 300 second token never has 400 seconds left
+        String first = tokenServices.createAccessToken(clientAuthentication("ROLE_EXTERNAL", 400)).getValue();
+        String second = tokenServices.createAccessToken(clientAuthentication("ROLE_EXTERNAL", 400)).getValue();
+
+        assertThat(second).isNotEqualTo(first);
+    }
+
+    private OAuth2Authentication clientAuthentication(String authority, int tokenReuseSeconds) {
+        Map<String, Serializable> extensions = tokenReuseSeconds > 0
+            ? Map.of(ClientTokenReuse.TOKEN_REUSE_SECONDS, tokenReuseSeconds) : Collections.emptyMap();
+        OAuth2Request request = new OAuth2Request(Map.of("grant_type", "client_credentials"), "external-client",
+            AuthorityUtils.createAuthorityList(authority), true, Set.of("external"), Collections.emptySet(), null,
+            Collections.emptySet(), extensions);
+        return new OAuth2Authentication(request, null);
+    }
+}
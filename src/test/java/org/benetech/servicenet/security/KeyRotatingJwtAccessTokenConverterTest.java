@@ -0,0 +1,127 @@
+package org.benetech.servicenet.security;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Unit tests for {@link KeyRotatingJwtAccessTokenConverter}.
+ */
+public class KeyRotatingJwtAccessTokenConverterTest {
+
+    private static KeyPair rsaKeyPair;
+
+    private static JwtSigningKey rsaKey;
+
+    private static JwtSigningKey ecKey;
+
+    private static JwtSigningKey nextEcKey;
+
+    @BeforeAll
+    public static void generateKeys() throws Exception {
+        KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+        rsaGenerator.initialize(2048);
+        rsaKeyPair = rsaGenerator.generateKeyPair();
+        KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+        ecGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+        rsaKey = new JwtSigningKey("selfsigned", JwtSigningKey.RS256, rsaKeyPair);
+        ecKey = new JwtSigningKey("ec-1", JwtSigningKey.ES256, ecGenerator.generateKeyPair());
+        nextEcKey = new JwtSigningKey("ec-2", JwtSigningKey.ES256, ecGenerator.generateKeyPair());
+    }
+
+    @Test
+    public void assertThatTokensAreSignedWithTheActiveKey() {
+        JwtTokenStore tokenStore = tokenStore(converter("ec-1"));
+
+        String token = issue(converter("ec-1"));
+
+        assertThat(header(token)).contains("\"alg\":\"ES256\"").contains("\"kid\":\"ec-1\"");
+        OAuth2Authentication authentication = tokenStore.readAuthentication(token);
+        assertThat(authentication.getName()).isEqualTo("user");
+        assertThat(authentication.getOAuth2Request().getClientId()).isEqualTo("web_app");
+    }
+
+    @Test
+    public void assertThatTokensOfPreviousKeysStayValidAfterRotation() {
+        String token = issue(converter("ec-1"));
+
+        assertThat(tokenStore(converter("ec-2")).readAccessToken(token).getValue()).isEqualTo(token);
+        assertThat(header(issue(converter("ec-2")))).contains("\"kid\":\"ec-2\"");
+    }
+
+    @Test
+    public void assertThatTokensWithoutKeyIdAreVerifiedWithTheKeyStoreKey() {
+        JwtAccessTokenConverter legacyConverter = new JwtAccessTokenConverter();
+        legacyConverter.setKeyPair(rsaKeyPair);
+
+        String token = issue(legacyConverter);
+
+        assertThat(header(token)).doesNotContain("kid");
+        assertThat(tokenStore(converter("ec-1")).readAuthentication(token).getName()).isEqualTo("user");
+    }
+
+    @Test
+    public void assertThatUnknownKeysAndBadSignaturesAreRejected() {
+        String token = issue(converter("ec-1"));
+        KeyRotatingJwtAccessTokenConverter withoutEcKey =
+            new KeyRotatingJwtAccessTokenConverter(new JwtSigningKeys(List.of(rsaKey), "selfsigned"));
+        String otherToken = issue(converter("ec-2"));
+        String tampered = token.substring(0, token.lastIndexOf('.')) + otherToken.substring(otherToken.lastIndexOf('.'));
+
+        assertThatExceptionOfType(InvalidTokenException.class).isThrownBy(() -> tokenStore(withoutEcKey).readAccessToken(token));
+        assertThatExceptionOfType(InvalidTokenException.class).isThrownBy(() -> tokenStore(converter("ec-1")).readAccessToken(tampered));
+    }
+
+    @Test
+    public void assertThatKeysMustFitTheirAlgorithm() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new JwtSigningKey("rsa", JwtSigningKey.ES256, rsaKeyPair));
+        assertThat(ecKey.toJwk()).containsEntry("kty", "EC").containsEntry("crv", "P-256").containsEntry("kid", "ec-1");
+        assertThat((String) ecKey.toJwk().get("x")).hasSize(43);
+        assertThat(rsaKey.toJwk()).containsEntry("kty", "RSA").containsEntry("e", "AQAB");
+    }
+
+    private KeyRotatingJwtAccessTokenConverter converter(String activeKeyId) {
+        return new KeyRotatingJwtAccessTokenConverter(new JwtSigningKeys(List.of(rsaKey, ecKey, nextEcKey), activeKeyId));
+    }
+
+    private JwtTokenStore tokenStore(JwtAccessTokenConverter converter) {
+        return new JwtTokenStore(converter);
+    }
+
+    private String issue(JwtAccessTokenConverter converter) {
+        OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "web_app", AuthorityUtils.createAuthorityList("ROLE_USER"),
+            true, Set.of("openid"), Collections.emptySet(), null, Collections.emptySet(), Collections.emptyMap());
+        OAuth2Authentication authentication = new OAuth2Authentication(request,
+            new UsernamePasswordAuthenticationToken("user", null, AuthorityUtils.createAuthorityList("ROLE_USER")));
+        DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("token");
+        accessToken.setExpiration(new Date(System.currentTimeMillis() + 60_000L));
+        OAuth2AccessToken enhanced = converter.enhance(accessToken, authentication);
+        return enhanced.getValue();
+    }
+
+    private String header(String token) {
+        return new String(Base64.getUrlDecoder().decode(token.substring(0, token.indexOf('.'))), StandardCharsets.UTF_8);
+    }
+}
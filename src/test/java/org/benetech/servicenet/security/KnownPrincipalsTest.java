@@ -0,0 +1,106 @@
+package org.benetech.servicenet.security;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.benetech.servicenet.config.UaaProperties;
+import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link KnownPrincipals}.
+ */
+public class KnownPrincipalsTest {
+
+    private final List<Object[]> loginsAndEmails = new ArrayList<>();
+
+    private ITopic<String> topic;
+
+    private MeterRegistry meterRegistry;
+
+    private KnownPrincipals knownPrincipals;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void init() {
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.streamAllLoginsAndEmails()).thenAnswer(invocation -> new ArrayList<>(loginsAndEmails).stream());
+        topic = mock(ITopic.class);
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        when(hazelcastInstance.<String>getTopic(KnownPrincipals.TOPIC_NAME)).thenReturn(topic);
+        meterRegistry = new SimpleMeterRegistry();
+        knownPrincipals = new KnownPrincipals(userRepository, hazelcastInstance, new UaaProperties(), meterRegistry);
+        loginsAndEmails.add(new Object[] {"john", "John@Example.com"});
+        loginsAndEmails.add(new Object[] {"noemail", null});
+    }
+
+    @Test
+    public void assertThatEverythingIsLookedUpBeforeTheFirstBuild() {
+        assertThat(knownPrincipals.mightBeLogin("unknown")).isTrue();
+        assertThat(meterRegistry.get("oauth.user.lookups").tag("result", "queried").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void assertThatUnknownLoginsAndEmailsAreFiltered() {
+        knownPrincipals.rebuild();
+
+        assertThat(knownPrincipals.mightBeLogin("john")).isTrue();
+        assertThat(knownPrincipals.mightBeLogin("noemail")).isTrue();
+        assertThat(knownPrincipals.mightBeEmail("john@example.com")).isTrue();
+        assertThat(knownPrincipals.mightBeLogin("unknown")).isFalse();
+        assertThat(knownPrincipals.mightBeEmail("unknown@example.com")).isFalse();
+        assertThat(meterRegistry.get("oauth.user.lookups").tag("result", "filtered").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void assertThatAddedUsersAreKnownAndPublished() {
+        knownPrincipals.rebuild();
+        User user = new User();
+        user.setLogin("jane");
+        user.setEmail("jane@example.com");
+
+        knownPrincipals.add(user);
+
+        assertThat(knownPrincipals.mightBeLogin("jane")).isTrue();
+        assertThat(knownPrincipals.mightBeEmail("Jane@Example.com")).isTrue();
+        verify(topic).publish("login:jane");
+        verify(topic).publish("email:jane@example.com");
+    }
+
+    @Test
+    public void assertThatKnownUsersArePublishedAnyway() {
+        // the other nodes rebuild on their own schedule, a login still known here may be gone from their filters
+        knownPrincipals.rebuild();
+        User user = new User();
+        user.setLogin("john");
+        user.setEmail("john@example.com");
+
+        knownPrincipals.add(user);
+
+        verify(topic).publish("login:john");
+        verify(topic).publish("email:john@example.com");
+    }
+
+    @Test
+    public void assertThatRecentAdditionsSurviveARebuild() {
+        knownPrincipals.rebuild();
+        User user = new User();
+        user.setLogin("jane");
+        knownPrincipals.add(user);
+
+        knownPrincipals.rebuild();
+
+        assertThat(knownPrincipals.mightBeLogin("jane")).isTrue();
+    }
+}
@@ -6,10 +6,13 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Optional;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -59,4 +62,34 @@ public class SecurityUtilsUnitTest {
         assertThat(SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ADMIN)).isFalse();
     }
 
+    @Test
+    public void testIsCurrentUserInRoleForTokenAuthentication() {
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        Collection<GrantedAuthority> authorities = new ArrayList<>();
+        authorities.add(new SimpleGrantedAuthority(AuthoritiesConstants.USER));
+        OAuth2Request request = new OAuth2Request(null, "web_app", null, true, null, null, null, null, null);
+        securityContext.setAuthentication(new OAuth2Authentication(request,
+            new ServiceNetUserAuthenticationToken("user", "N/A", authorities)));
+        SecurityContextHolder.setContext(securityContext);
+
+        assertThat(SecurityUtils.isAuthenticated()).isTrue();
+        assertThat(SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.USER)).isTrue();
+        assertThat(SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ADMIN)).isFalse();
+        assertThat(SecurityUtils.isCurrentUserInRole("ROLE_NEVER_SEEN")).isFalse();
+    }
+
+    @Test
+    public void testIsCurrentUserInRoleForLoggedInUser() {
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        Collection<GrantedAuthority> authorities = new ArrayList<>();
+        authorities.add(new SimpleGrantedAuthority(AuthoritiesConstants.USER));
+        authorities.add(new SimpleGrantedAuthority(AuthoritiesConstants.ADMIN));
+        CustomSpringSecurityUser user = new CustomSpringSecurityUser("admin", "hash", authorities, UUID.randomUUID());
+        securityContext.setAuthentication(new UsernamePasswordAuthenticationToken(user, null, authorities));
+        SecurityContextHolder.setContext(securityContext);
+
+        assertThat(SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ADMIN)).isTrue();
+        assertThat(SecurityUtils.isCurrentUserInRole(AuthoritiesConstants.ANONYMOUS)).isFalse();
+    }
+
 }
@@ -0,0 +1,167 @@
+package org.benetech.servicenet.security;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.benetech.servicenet.config.UaaProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link TokenRevocations}.
+ */
+public class TokenRevocationsTest {
+
+    private final Map<String, Long> revokedTokens = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> revokedUsers = new ConcurrentHashMap<>();
+
+    private MeterRegistry meterRegistry;
+
+    private TokenRevocations tokenRevocations;
+
+    @BeforeEach
+    public void init() {
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        IMap<String, Long> tokenMap = mapBackedBy(revokedTokens);
+        IMap<String, Long> userMap = mapBackedBy(revokedUsers);
+        when(hazelcastInstance.<String, Long>getMap(TokenRevocations.TOKEN_MAP_NAME)).thenReturn(tokenMap);
+        when(hazelcastInstance.<String, Long>getMap(TokenRevocations.USER_MAP_NAME)).thenReturn(userMap);
+        meterRegistry = new SimpleMeterRegistry();
+        tokenRevocations = new TokenRevocations(hazelcastInstance, new UaaProperties(), meterRegistry);
+    }
+
+    @Test
+    public void assertThatTokensAreNotRevokedByDefault() {
+        assertThat(tokenRevocations.isRevoked(claims("token", null, UUID.randomUUID(), now()))).isFalse();
+        assertThat(meterRegistry.get("oauth.token.revocation.checks").tag("result", "filtered").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void assertThatRevokedTokensAndTheirRefreshTokensAreRevoked() {
+        tokenRevocations.revokeToken(accessToken("token"));
+
+        assertThat(tokenRevocations.isRevoked(claims("token", null, null, now()))).isTrue();
+        assertThat(tokenRevocations.isRevoked(claims("refresh", "token", null, now()))).isTrue();
+        assertThat(tokenRevocations.isRevoked(claims("other", null, null, now()))).isFalse();
+    }
+
+    @Test
+    public void assertThatUserRevocationOnlyAppliesToEarlierTokens() {
+        UUID userId = UUID.randomUUID();
+        long issuedBefore = now() - 10;
+        tokenRevocations.revokeUserTokens(userId);
+
+        assertThat(tokenRevocations.isRevoked(claims("old", null, userId, issuedBefore))).isTrue();
+        assertThat(tokenRevocations.isRevoked(claims("new", null, userId, now() + 10))).isFalse();
+    }
+
+    @Test
+    public void assertThatUserRevocationWaitsForTheTransactionToCommit() {
+        UUID committed = UUID.randomUUID();
+        UUID rolledBack = UUID.randomUUID();
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            tokenRevocations.revokeUserTokens(committed);
+            assertThat(tokenRevocations.isRevoked(claims("old", null, committed, now() - 10))).isFalse();
+
+            TransactionSynchronizationUtils.triggerAfterCommit();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            tokenRevocations.revokeUserTokens(rolledBack);
+            TransactionSynchronizationUtils.triggerAfterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(tokenRevocations.isRevoked(claims("old", null, committed, now() - 10))).isTrue();
+        assertThat(tokenRevocations.isRevoked(claims("old", null, rolledBack, now() - 10))).isFalse();
+        assertThat(revokedUsers).containsOnlyKeys(committed.toString());
+    }
+
+    @Test
+    public void assertThatRebuiltFilterKeepsRevocations() {
+        UUID userId = UUID.randomUUID();
+        tokenRevocations.revokeToken(accessToken("token"));
+        tokenRevocations.revokeUserTokens(userId);
+
+        tokenRevocations.rebuildFilter();
+
+        assertThat(tokenRevocations.isRevoked(claims("token", null, null, now()))).isTrue();
+        assertThat(tokenRevocations.isRevoked(claims("old", null, userId, now() - 10))).isTrue();
+    }
+
+    @Test
+    public void assertThatTheFilterHasNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            filter.put("jti:" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            assertThat(filter.mightContain("jti:" + (i % 1000))).isTrue();
+            if (filter.mightContain("user:" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(300);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IMap<String, Long> mapBackedBy(Map<String, Long> entries) {
+        IMap<String, Long> map = mock(IMap.class);
+        when(map.containsKey(any())).thenAnswer(invocation -> entries.containsKey(invocation.<Object>getArgument(0)));
+        when(map.get(any())).thenAnswer(invocation -> entries.get(invocation.<Object>getArgument(0)));
+        when(map.keySet()).thenAnswer(invocation -> entries.keySet());
+        doAnswer(invocation -> entries.put(invocation.getArgument(0), invocation.getArgument(1)))
+            .when(map).set(anyString(), any(Long.class), anyLong(), any(TimeUnit.class));
+        return map;
+    }
+
+    private static DefaultOAuth2AccessToken accessToken(String tokenId) {
+        DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken("value");
+        accessToken.setExpiration(new Date(System.currentTimeMillis() + 60_000L));
+        accessToken.setAdditionalInformation(Map.of(AccessTokenConverter.JTI, tokenId));
+        return accessToken;
+    }
+
+    private static Map<String, Object> claims(String tokenId, String accessTokenId, UUID userId, long issuedAt) {
+        Map<String, Object> claims = new ConcurrentHashMap<>();
+        claims.put(AccessTokenConverter.JTI, tokenId);
+        if (accessTokenId != null) {
+            claims.put(AccessTokenConverter.ATI, accessTokenId);
+        }
+        if (userId != null) {
+            claims.put(ServiceNetTokenEnhancer.USER_ID, userId.toString());
+        }
+        claims.put("iat", (int) issuedAt);
+        return claims;
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000L;
+    }
+}
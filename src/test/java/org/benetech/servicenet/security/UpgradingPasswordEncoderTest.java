@@ -0,0 +1,58 @@
+package org.benetech.servicenet.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+/**
+ * Unit tests for {@link UpgradingPasswordEncoder}.
+ */
+public class UpgradingPasswordEncoderTest {
+
+    @Test
+    public void assertThatBcryptHashesAreStoredBare() {
+        UpgradingPasswordEncoder passwordEncoder = new UpgradingPasswordEncoder(UpgradingPasswordEncoder.BCRYPT, 4);
+
+        String hash = passwordEncoder.encode("password");
+
+        assertThat(hash).startsWith("$2a$04$").hasSize(60);
+        assertThat(passwordEncoder.matches("password", hash)).isTrue();
+        assertThat(passwordEncoder.matches("other", hash)).isFalse();
+        assertThat(passwordEncoder.upgradeEncoding(hash)).isFalse();
+    }
+
+    @Test
+    public void assertThatBcryptHashWithAnotherCostIsUpgraded() {
+        UpgradingPasswordEncoder passwordEncoder = new UpgradingPasswordEncoder(UpgradingPasswordEncoder.BCRYPT, 5);
+        String legacyHash = new BCryptPasswordEncoder(4).encode("password");
+
+        assertThat(passwordEncoder.matches("password", legacyHash)).isTrue();
+        assertThat(passwordEncoder.upgradeEncoding(legacyHash)).isTrue();
+    }
+
+    @Test
+    public void assertThatBcryptHashIsUpgradedToAnotherAlgorithm() {
+        UpgradingPasswordEncoder passwordEncoder = new UpgradingPasswordEncoder(UpgradingPasswordEncoder.PBKDF2, 4);
+        String legacyHash = new BCryptPasswordEncoder(4).encode("password");
+
+        assertThat(passwordEncoder.matches("password", legacyHash)).isTrue();
+        assertThat(passwordEncoder.upgradeEncoding(legacyHash)).isTrue();
+
+        String hash = passwordEncoder.encode("password");
+        assertThat(hash).startsWith("{pbkdf2}");
+        assertThat(hash.length()).isLessThanOrEqualTo(255);
+        assertThat(passwordEncoder.matches("password", hash)).isTrue();
+        assertThat(passwordEncoder.upgradeEncoding(hash)).isFalse();
+    }
+
+    @Test
+    public void assertThatUnknownAlgorithmDoesNotMatch() {
+        UpgradingPasswordEncoder passwordEncoder = new UpgradingPasswordEncoder(UpgradingPasswordEncoder.BCRYPT, 4);
+
+        assertThat(passwordEncoder.matches("password", "{md5}5f4dcc3b5aa765d61d8327deb882cf99")).isFalse();
+        assertThat(passwordEncoder.matches("password", "{broken")).isFalse();
+        assertThatIllegalArgumentException().isThrownBy(() -> new UpgradingPasswordEncoder("md5", 4));
+    }
+}
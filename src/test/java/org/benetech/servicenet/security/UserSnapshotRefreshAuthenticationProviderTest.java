@@ -0,0 +1,140 @@
+package org.benetech.servicenet.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.ProviderManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.TokenRequest;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.TokenEnhancerChain;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link UserSnapshotRefreshAuthenticationProvider}.
+ */
+public class UserSnapshotRefreshAuthenticationProviderTest {
+
+    private static final UUID USER_ID = UUID.randomUUID();
+
+    private static final List<GrantedAuthority> AUTHORITIES = AuthorityUtils.createAuthorityList(AuthoritiesConstants.USER);
+
+    private UserSecuritySnapshots userSecuritySnapshots;
+
+    private AuthenticationProvider fallback;
+
+    private DefaultTokenServices tokenServices;
+
+    @BeforeEach
+    public void init() throws Exception {
+        userSecuritySnapshots = mock(UserSecuritySnapshots.class);
+        fallback = mock(AuthenticationProvider.class);
+        when(fallback.supports(any())).thenReturn(true);
+
+        JwtAccessTokenConverter converter = new JwtAccessTokenConverter();
+        ((DefaultAccessTokenConverter) converter.getAccessTokenConverter())
+            .setUserTokenConverter(new ServiceNetUserAuthenticationConverter());
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        converter.setKeyPair(generator.generateKeyPair());
+        TokenEnhancerChain tokenEnhancerChain = new TokenEnhancerChain();
+        tokenEnhancerChain.setTokenEnhancers(Arrays.asList(new ServiceNetTokenEnhancer(), converter));
+        tokenServices = new DefaultTokenServices();
+        tokenServices.setTokenStore(new JwtTokenStore(converter));
+        tokenServices.setTokenEnhancer(tokenEnhancerChain);
+        tokenServices.setSupportRefreshToken(true);
+        tokenServices.setReuseRefreshToken(false);
+        tokenServices.setAuthenticationManager(new ProviderManager(Collections.singletonList(
+            new UserSnapshotRefreshAuthenticationProvider(userSecuritySnapshots, fallback))));
+    }
+
+    @Test
+    public void assertThatRefreshUsesTheSnapshot() {
+        givenSnapshot(true, 3, AuthoritiesConstants.USER, AuthoritiesConstants.ADMIN);
+        OAuth2AccessToken token = tokenServices.createAccessToken(userAuthentication(new CustomSpringSecurityUser(
+            "user", "hash", AUTHORITIES, USER_ID, 3)));
+
+        OAuth2AccessToken refreshed = refresh(token);
+
+        assertThat(refreshed.getAdditionalInformation())
+            .containsEntry(ServiceNetTokenEnhancer.USER_ID, USER_ID)
+            .containsEntry(ServiceNetTokenEnhancer.SECURITY_VERSION, 3L);
+        OAuth2Authentication authentication = tokenServices.loadAuthentication(refreshed.getValue());
+        assertThat(AuthorityUtils.authorityListToSet(authentication.getAuthorities()))
+            .containsExactlyInAnyOrder(AuthoritiesConstants.USER, AuthoritiesConstants.ADMIN);
+        verify(fallback, never()).authenticate(any());
+    }
+
+    @Test
+    public void assertThatRefreshIsRefusedAfterASecurityChange() {
+        givenSnapshot(true, 4, AuthoritiesConstants.USER);
+        OAuth2AccessToken token = tokenServices.createAccessToken(userAuthentication(new CustomSpringSecurityUser(
+            "user", "hash", AUTHORITIES, USER_ID, 3)));
+
+        assertThatThrownBy(() -> refresh(token)).isInstanceOf(InvalidGrantException.class);
+    }
+
+    @Test
+    public void assertThatRefreshIsRefusedForDeactivatedUsers() {
+        givenSnapshot(false, 3, AuthoritiesConstants.USER);
+        OAuth2AccessToken token = tokenServices.createAccessToken(userAuthentication(new CustomSpringSecurityUser(
+            "user", "hash", AUTHORITIES, USER_ID, 3)));
+
+        assertThatThrownBy(() -> refresh(token)).isInstanceOf(UserNotActivatedException.class);
+    }
+
+    @Test
+    public void assertThatTokensWithoutASecurityVersionLoadTheUserByName() {
+        when(fallback.authenticate(any())).thenAnswer(invocation -> new PreAuthenticatedAuthenticationToken(
+            new CustomSpringSecurityUser("user", "hash", AUTHORITIES, USER_ID), "", AUTHORITIES));
+        OAuth2AccessToken token = tokenServices.createAccessToken(userAuthentication("user"));
+
+        refresh(token);
+
+        verify(fallback).authenticate(any());
+        verify(userSecuritySnapshots, never()).get(any());
+    }
+
+    private void givenSnapshot(boolean activated, long securityVersion, String... authorities) {
+        when(userSecuritySnapshots.get(USER_ID))
+            .thenReturn(new UserSecuritySnapshot(USER_ID, "user", activated, Arrays.asList(authorities), securityVersion));
+    }
+
+    private OAuth2AccessToken refresh(OAuth2AccessToken token) {
+        return tokenServices.refreshAccessToken(token.getRefreshToken().getValue(),
+            new TokenRequest(Collections.emptyMap(), "web_app", Set.of("openid"), "refresh_token"));
+    }
+
+    private static OAuth2Authentication userAuthentication(Object principal) {
+        OAuth2Request request = new OAuth2Request(Map.of("grant_type", "password"), "web_app", null, true,
+            Set.of("openid"), null, null, null, null);
+        Authentication user = new UsernamePasswordAuthenticationToken(principal, null, AUTHORITIES);
+        return new OAuth2Authentication(request, user);
+    }
+}
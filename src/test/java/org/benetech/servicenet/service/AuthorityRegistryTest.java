@@ -0,0 +1,102 @@
+package org.benetech.servicenet.service;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+import org.benetech.servicenet.domain.Authority;
+import org.benetech.servicenet.repository.AuthorityRepository;
+import org.benetech.servicenet.security.AuthoritiesConstants;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link AuthorityRegistry}.
+ */
+public class AuthorityRegistryTest {
+
+    private AuthorityRepository authorityRepository;
+
+    private ITopic<Long> topic;
+
+    private MessageListener<Long> messageListener;
+
+    private AuthorityRegistry authorityRegistry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void init() {
+        authorityRepository = mock(AuthorityRepository.class);
+        when(authorityRepository.findAll())
+            .thenReturn(Arrays.asList(authority(AuthoritiesConstants.ADMIN), authority(AuthoritiesConstants.USER)));
+        topic = mock(ITopic.class);
+        HazelcastInstance hazelcastInstance = mock(HazelcastInstance.class);
+        when(hazelcastInstance.<Long>getTopic(AuthorityRegistry.TOPIC_NAME)).thenReturn(topic);
+        authorityRegistry = new AuthorityRegistry(authorityRepository, hazelcastInstance);
+        ArgumentCaptor<MessageListener<Long>> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(topic).addMessageListener(listener.capture());
+        messageListener = listener.getValue();
+    }
+
+    @Test
+    public void assertThatAuthoritiesAreLoadedOnce() {
+        assertThat(authorityRegistry.find(AuthoritiesConstants.USER)).contains(authority(AuthoritiesConstants.USER));
+        assertThat(authorityRegistry.find("ROLE_UNKNOWN")).isEmpty();
+        assertThat(authorityRegistry.getNames()).containsExactly(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER);
+
+        verify(authorityRepository).findAll();
+    }
+
+    @Test
+    public void assertThatChangesArePublishedAndReloaded() {
+        authorityRegistry.getNames();
+
+        authorityRegistry.authoritiesChanged();
+        authorityRegistry.getNames();
+
+        verify(topic).publish(anyLong());
+        verify(authorityRepository, times(2)).findAll();
+    }
+
+    @Test
+    public void assertThatChangesOnOtherNodesAreReloaded() {
+        authorityRegistry.getNames();
+
+        messageListener.onMessage(new Message<>(AuthorityRegistry.TOPIC_NAME, 1L, 1L, null));
+        authorityRegistry.getNames();
+
+        verify(authorityRepository, times(2)).findAll();
+    }
+
+    @Test
+    public void assertThatChangesWhileLoadingAreReloaded() {
+        when(authorityRepository.findAll())
+            .thenAnswer(invocation -> {
+                messageListener.onMessage(new Message<>(AuthorityRegistry.TOPIC_NAME, 1L, 1L, null));
+                return Arrays.asList(authority(AuthoritiesConstants.ADMIN));
+            })
+            .thenReturn(Arrays.asList(authority(AuthoritiesConstants.ADMIN), authority(AuthoritiesConstants.USER)));
+
+        assertThat(authorityRegistry.getNames()).containsExactly(AuthoritiesConstants.ADMIN);
+        assertThat(authorityRegistry.getNames()).containsExactly(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER);
+        assertThat(authorityRegistry.getNames()).containsExactly(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER);
+
+        verify(authorityRepository, times(2)).findAll();
+    }
+
+    private static Authority authority(String name) {
+        Authority authority = new Authority();
+        authority.setName(name);
+        return authority;
+    }
+}
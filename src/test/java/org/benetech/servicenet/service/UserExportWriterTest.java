@@ -0,0 +1,79 @@
+package org.benetech.servicenet.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.benetech.servicenet.service.dto.UserDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Unit tests for {@link UserExportWriter}.
+ */
+public class UserExportWriterTest {
+
+    @Test
+    public void assertThatCsvFieldsAreQuotedOnlyWhenNeeded() throws IOException {
+        UserDTO user = new UserDTO();
+        user.setId(UUID.fromString("6c0e2a3e-1c7a-4b4e-9a57-3a4a2d1f0b11"));
+        user.setLogin("ada");
+        user.setLastName("Lovelace, \"Countess\"");
+        user.setActivated(true);
+        user.setAuthorities(new HashSet<>(Arrays.asList("ROLE_USER", "ROLE_ADMIN")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (UserExportWriter writer = UserExportWriter.csv(out)) {
+            writer.write(user);
+        }
+
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(
+            String.join(",", UserExportWriter.CSV_COLUMNS) + "\r\n" +
+            "6c0e2a3e-1c7a-4b4e-9a57-3a4a2d1f0b11,ada,,,\"Lovelace, \"\"Countess\"\"\",,,true,ROLE_ADMIN ROLE_USER,,,,\r\n");
+    }
+
+    @Test
+    public void assertThatCsvFormulasAreEscaped() throws IOException {
+        UserDTO user = new UserDTO();
+        user.setLogin("mallory");
+        user.setFirstName("=HYPERLINK(\"http://evil.example\",\"x\")");
+        user.setLastName("+1");
+        user.setImageUrl("-2");
+        user.setCreatedBy("@SUM(A1)");
+        user.setLastModifiedBy("\tcmd");
+        user.setAuthorities(new HashSet<>());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (UserExportWriter writer = UserExportWriter.csv(out)) {
+            writer.write(user);
+        }
+
+        assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).endsWith("\r\n" +
+            ",mallory,,\"'=HYPERLINK(\"\"http://evil.example\"\",\"\"x\"\")\",\"'+1\",,\"'-2\",false,," +
+            "\"'@SUM(A1)\",,\"'\tcmd\",\r\n");
+    }
+
+    @Test
+    public void assertThatNdjsonHasOneUserPerLine() throws IOException {
+        UserDTO ada = new UserDTO();
+        ada.setLogin("ada");
+        UserDTO grace = new UserDTO();
+        grace.setLogin("grace");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (UserExportWriter writer = UserExportWriter.ndjson(out, new ObjectMapper())) {
+            writer.write(ada);
+            writer.write(grace);
+        }
+
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).startsWith("{").contains("\"login\":\"ada\"");
+        assertThat(lines[1]).startsWith("{").contains("\"login\":\"grace\"");
+    }
+}
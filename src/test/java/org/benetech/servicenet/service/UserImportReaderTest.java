@@ -0,0 +1,112 @@
+package org.benetech.servicenet.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit tests for {@link UserImportReader}.
+ */
+public class UserImportReaderTest {
+
+    @Test
+    public void assertThatCsvRowsAreReadByHeaderName() throws IOException {
+        UserImportReader reader = UserImportReader.csv(file(
+            "email,login,authorities,password\r\n" +
+            "ada@localhost,ada,ROLE_USER ROLE_ADMIN,secret\r\n" +
+            "\r\n" +
+            ",grace,,\r\n"));
+
+        UserImportReader.Row ada = reader.next();
+        assertThat(ada.getLine()).isEqualTo(2);
+        assertThat(ada.getUser().getLogin()).isEqualTo("ada");
+        assertThat(ada.getUser().getEmail()).isEqualTo("ada@localhost");
+        assertThat(ada.getUser().getAuthorities()).containsExactlyInAnyOrder("ROLE_USER", "ROLE_ADMIN");
+        assertThat(ada.getUser().getPassword()).isEqualTo("secret");
+
+        UserImportReader.Row grace = reader.next();
+        assertThat(grace.getLine()).isEqualTo(4);
+        assertThat(grace.getUser().getLogin()).isEqualTo("grace");
+        assertThat(grace.getUser().getEmail()).isNull();
+        assertThat(grace.getUser().getAuthorities()).isNull();
+        assertThat(grace.getUser().getPassword()).isNull();
+
+        assertThat(reader.next()).isNull();
+    }
+
+    @Test
+    public void assertThatQuotedCsvFieldsMaySpanLines() throws IOException {
+        UserImportReader reader = UserImportReader.csv(file(
+            "login,lastName,firstName\n" +
+            "ada,\"Lovelace, \"\"Countess\"\"\nof Lovelace\",Ada\n" +
+            "grace,Hopper,Grace\n"));
+
+        UserImportReader.Row ada = reader.next();
+        assertThat(ada.getUser().getLastName()).isEqualTo("Lovelace, \"Countess\"\nof Lovelace");
+        assertThat(ada.getUser().getFirstName()).isEqualTo("Ada");
+
+        assertThat(reader.next().getLine()).isEqualTo(4);
+    }
+
+    @Test
+    public void assertThatMalformedCsvRowsAreRejectedAlone() throws IOException {
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i <= UserImportReader.MAX_ROW_LENGTH; i++) {
+            longName.append('a');
+        }
+        UserImportReader reader = UserImportReader.csv(file(
+            "login,lastName\n" +
+            "ada\n" +
+            "grace," + longName + "\n" +
+            "alan,Turing\n"));
+
+        assertThat(reader.next().getError()).isEqualTo("Expected 2 fields, found 1");
+        assertThat(reader.next().getError()).startsWith("Row longer than");
+        assertThat(reader.next().getUser().getLogin()).isEqualTo("alan");
+    }
+
+    @Test
+    public void assertThatCsvHeaderMustNameKnownColumns() {
+        assertThatThrownBy(() -> UserImportReader.csv(file("email,lastName\n")))
+            .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> UserImportReader.csv(file("login,password_hash\n")))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("password_hash");
+    }
+
+    @Test
+    public void assertThatNdjsonLinesAreReadOneByOne() throws IOException {
+        UserImportReader reader = UserImportReader.ndjson(file(
+            "{\"login\":\"ada\",\"authorities\":[\"ROLE_USER\"],\"password\":\"secret\"}\n" +
+            "{\"login\":\n" +
+            "\n" +
+            "{\"login\":\"grace\"}"), new ObjectMapper());
+
+        UserImportReader.Row ada = reader.next();
+        assertThat(ada.getUser().getLogin()).isEqualTo("ada");
+        assertThat(ada.getUser().getAuthorities()).containsExactly("ROLE_USER");
+        assertThat(ada.getUser().getPassword()).isEqualTo("secret");
+
+        UserImportReader.Row malformed = reader.next();
+        assertThat(malformed.getLine()).isEqualTo(2);
+        assertThat(malformed.getUser()).isNull();
+        assertThat(malformed.getError()).startsWith("Malformed JSON");
+
+        UserImportReader.Row grace = reader.next();
+        assertThat(grace.getLine()).isEqualTo(4);
+        assertThat(grace.getUser().getLogin()).isEqualTo("grace");
+
+        assertThat(reader.next()).isNull();
+    }
+
+    private static InputStream file(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
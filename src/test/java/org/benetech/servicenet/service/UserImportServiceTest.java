@@ -0,0 +1,99 @@
+package org.benetech.servicenet.service;
+
+import org.benetech.servicenet.config.UaaProperties;
+import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.repository.UserRepository;
+import org.benetech.servicenet.service.dto.UserImportResultDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link UserImportService}.
+ */
+public class UserImportServiceTest {
+
+    private final List<String> savedLogins = new ArrayList<>();
+
+    private UserImportService userImportService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void init() {
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findLoginsByLoginIn(anyCollection())).thenReturn(Collections.emptyList());
+        when(userRepository.findEmailsByEmailIgnoreCaseIn(anyCollection())).thenReturn(Collections.emptyList());
+        // "taken" was created by another request after the batch was checked
+        when(userRepository.saveAll(any(Iterable.class))).thenAnswer(invocation -> {
+            List<User> users = new ArrayList<>();
+            ((Iterable<User>) invocation.getArgument(0)).forEach(users::add);
+            if (users.stream().anyMatch(user -> "taken".equals(user.getLogin()))) {
+                throw new DataIntegrityViolationException("ux_user_login");
+            }
+            users.forEach(user -> savedLogins.add(user.getLogin()));
+            return users;
+        });
+        when(userRepository.saveAndFlush(any(User.class))).thenAnswer(invocation -> {
+            User user = invocation.getArgument(0);
+            if ("taken".equals(user.getLogin())) {
+                throw new DataIntegrityViolationException("ux_user_login");
+            }
+            savedLogins.add(user.getLogin());
+            return user;
+        });
+        PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+        when(passwordEncoder.encode(anyString())).thenReturn("hash");
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        userImportService = new UserImportService(userRepository, passwordEncoder, mock(AuthorityRegistry.class),
+            mock(MailService.class), Validation.buildDefaultValidatorFactory().getValidator(), transactionManager,
+            new UaaProperties(), 25);
+    }
+
+    @AfterEach
+    public void destroy() {
+        userImportService.destroy();
+    }
+
+    @Test
+    public void assertThatOnlyRowsConflictingWithNewUsersAreRejected() throws IOException {
+        String csv = "login,email,password\n" +
+            "ada,ada@example.com,secret\n" +
+            "taken,taken@example.com,secret\n" +
+            "grace,grace@example.com,secret\n";
+
+        List<UserImportResultDTO> results = new ArrayList<>();
+        long created;
+        try (UserImportReader reader = UserImportReader.csv(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)))) {
+            created = userImportService.importUsers(reader, results::addAll);
+        }
+
+        assertThat(created).isEqualTo(2);
+        assertThat(savedLogins).containsExactly("ada", "grace");
+        assertThat(results).extracting(UserImportResultDTO::getLogin, UserImportResultDTO::getStatus).containsExactly(
+            tuple("ada", UserImportResultDTO.Status.CREATED),
+            tuple("taken", UserImportResultDTO.Status.REJECTED),
+            tuple("grace", UserImportResultDTO.Status.CREATED));
+        assertThat(results.get(1).getMessage()).isEqualTo("Conflicts with a user created meanwhile");
+    }
+}
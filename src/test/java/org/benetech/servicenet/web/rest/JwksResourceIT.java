@@ -0,0 +1,46 @@
+package org.benetech.servicenet.web.rest;
+
+import org.benetech.servicenet.ServiceNetAuthApp;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Integration tests for the {@link JwksResource} REST controller.
+ */
+@AutoConfigureMockMvc
+@SpringBootTest(classes = ServiceNetAuthApp.class)
+public class JwksResourceIT {
+
+    @Autowired
+    private MockMvc restJwksMockMvc;
+
+    @Test
+    public void getJwks() throws Exception {
+        restJwksMockMvc.perform(get("/.well-known/jwks.json"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=300, public"))
+            .andExpect(header().exists(HttpHeaders.ETAG))
+            .andExpect(jsonPath("$.keys[0].kid").value("selfsigned"))
+            .andExpect(jsonPath("$.keys[0].kty").value("RSA"))
+            .andExpect(jsonPath("$.keys[0].alg").value("RS256"));
+    }
+
+    @Test
+    public void getJwksNotModified() throws Exception {
+        String eTag = restJwksMockMvc.perform(get("/.well-known/jwks.json"))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        restJwksMockMvc.perform(get("/.well-known/jwks.json").header(HttpHeaders.IF_NONE_MATCH, eTag))
+            .andExpect(status().isNotModified())
+            .andExpect(header().string(HttpHeaders.ETAG, eTag));
+    }
+}
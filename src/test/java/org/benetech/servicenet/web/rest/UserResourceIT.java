@@ -1,29 +1,41 @@
 package org.benetech.servicenet.web.rest;
 
 import org.benetech.servicenet.ServiceNetAuthApp;
+import org.benetech.servicenet.config.Constants;
 import org.benetech.servicenet.domain.Authority;
 import org.benetech.servicenet.domain.User;
+import org.benetech.servicenet.repository.UserCache;
 import org.benetech.servicenet.repository.UserRepository;
 import org.benetech.servicenet.security.AuthoritiesConstants;
+import org.benetech.servicenet.service.UserExportWriter;
 import org.benetech.servicenet.service.dto.UserDTO;
 import org.benetech.servicenet.service.mapper.UserMapper;
 import org.benetech.servicenet.web.rest.vm.ManagedUserVM;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.RandomStringUtils;
+import com.jayway.jsonpath.JsonPath;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.*;
 import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasItems;
@@ -74,6 +86,9 @@ public class UserResourceIT {
     @Autowired
     private CacheManager cacheManager;
 
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
     @Autowired
     private MockMvc restUserMockMvc;
 
@@ -81,8 +96,9 @@ public class UserResourceIT {
 
     @BeforeEach
     public void setup() {
-        cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).clear();
-        cacheManager.getCache(UserRepository.USERS_BY_EMAIL_CACHE).clear();
+        cacheManager.getCache(UserCache.USERS_CACHE).clear();
+        cacheManager.getCache(UserCache.USER_IDS_BY_LOGIN_CACHE).clear();
+        cacheManager.getCache(UserCache.USER_IDS_BY_EMAIL_CACHE).clear();
     }
 
     /**
@@ -229,6 +245,160 @@ public class UserResourceIT {
         assertPersistedUsers(users -> assertThat(users).hasSize(databaseSizeBeforeCreate));
     }
 
+    @Test
+    @Transactional
+    public void importUsersFromCsv() throws Exception {
+        userRepository.saveAndFlush(user);
+
+        String csv = "login,email,firstName,authorities,password\n" +
+            "imported-ada,ada@localhost,Ada,ROLE_USER ROLE_ADMIN,secretpass\n" +
+            "imported-grace,grace@localhost,Grace,ROLE_UNKNOWN,\n" +
+            DEFAULT_LOGIN + ",other@localhost,,,\n" +
+            "imported-alan,ALAN@localhost,Alan,,\n" +
+            "IMPORTED-ADA,ada2@localhost,,,\n" +
+            "imported-kurt,not-an-email,,,\n";
+        MvcResult result = restUserMockMvc.perform(post("/api/users/_import")
+            .contentType("text/csv")
+            .content(csv))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType("application/x-ndjson"))
+            .andReturn();
+
+        String[] results = result.getResponse().getContentAsString().split("\n");
+        assertThat(results).hasSize(6);
+        assertImportResult(results[0], 2, "imported-ada", "CREATED");
+        assertImportResult(results[1], 3, "imported-grace", "REJECTED");
+        assertImportResult(results[2], 4, DEFAULT_LOGIN, "REJECTED");
+        assertImportResult(results[3], 5, "imported-alan", "CREATED");
+        assertImportResult(results[4], 6, "imported-ada", "REJECTED");
+        assertImportResult(results[5], 7, "imported-kurt", "REJECTED");
+        assertThat((String) JsonPath.read(results[1], "$.message")).isEqualTo("Unknown authority ROLE_UNKNOWN");
+        assertThat((String) JsonPath.read(results[2], "$.message")).isEqualTo("Login name already used!");
+        assertThat((String) JsonPath.read(results[5], "$.message")).startsWith("email ");
+
+        User ada = userRepository.findOneWithAuthoritiesByLogin("imported-ada").get();
+        assertThat(passwordEncoder.matches("secretpass", ada.getPassword())).isTrue();
+        assertThat(ada.getActivated()).isTrue();
+        assertThat(ada.getResetKey()).isNull();
+        assertThat(ada.getAuthorities()).extracting(Authority::getName)
+            .containsExactlyInAnyOrder(AuthoritiesConstants.USER, AuthoritiesConstants.ADMIN);
+        User alan = userRepository.findOneByLogin("imported-alan").get();
+        assertThat(alan.getEmail()).isEqualTo("alan@localhost");
+        assertThat(alan.getResetKey()).isNotNull();
+        assertThat(userRepository.findOneByLogin("imported-grace")).isNotPresent();
+    }
+
+    @Test
+    @Transactional
+    public void importUsersFromNdjson() throws Exception {
+        String ndjson = "{\"login\":\"imported-ada\",\"email\":\"ada@localhost\",\"langKey\":\"fr\"}\n" +
+            "{\"login\":\n" +
+            "{\"login\":\"imported-grace\",\"email\":\"ada@localhost\"}\n";
+        MvcResult result = restUserMockMvc.perform(post("/api/users/_import")
+            .contentType("application/x-ndjson")
+            .content(ndjson))
+            .andExpect(status().isOk())
+            .andReturn();
+
+        String[] results = result.getResponse().getContentAsString().split("\n");
+        assertThat(results).hasSize(3);
+        assertImportResult(results[0], 1, "imported-ada", "CREATED");
+        assertThat((String) JsonPath.read(results[1], "$.status")).isEqualTo("REJECTED");
+        assertImportResult(results[2], 3, "imported-grace", "REJECTED");
+        assertThat((String) JsonPath.read(results[2], "$.message")).isEqualTo("Email is already in use!");
+        assertThat(userRepository.findOneByLogin("imported-ada").get().getLangKey()).isEqualTo("fr");
+    }
+
+    @Test
+    @Transactional
+    public void importUsersWithInvalidHeader() throws Exception {
+        restUserMockMvc.perform(post("/api/users/_import")
+            .contentType("text/csv")
+            .content("email,password_hash\n"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional
+    public void exportUsers() throws Exception {
+        userRepository.saveAndFlush(user);
+        long users = userRepository.count() - 1;
+
+        MvcResult result = restUserMockMvc.perform(get("/api/users/_export")
+            .accept("application/x-ndjson"))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+            .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+            .andReturn();
+
+        List<String> lines = Arrays.asList(result.getResponse().getContentAsString().split("\n"));
+        assertThat(lines).hasSize((int) users);
+        String exported = lines.stream().filter(line -> line.contains("\"" + DEFAULT_LOGIN + "\"")).findFirst().get();
+        assertThat((String) JsonPath.read(exported, "$.email")).isEqualTo(user.getEmail());
+        assertThat(lines).noneMatch(line -> line.contains("\"" + Constants.ANONYMOUS_USER + "\""));
+        String admin = lines.stream().filter(line -> line.contains("\"admin\"")).findFirst().get();
+        assertThat((List<String>) JsonPath.read(admin, "$.authorities"))
+            .containsExactlyInAnyOrder(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER);
+    }
+
+    @Test
+    @Transactional
+    public void exportUsersAsGzippedCsv() throws Exception {
+        userRepository.saveAndFlush(user);
+        long users = userRepository.count() - 1;
+
+        MvcResult result = restUserMockMvc.perform(get("/api/users/_export")
+            .accept("text/csv")
+            .header(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip;q=0.8"))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+            .andReturn();
+
+        String csv;
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+            csv = new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8);
+        }
+        List<String> lines = Arrays.asList(csv.split("\r\n"));
+        assertThat(lines).hasSize((int) users + 1);
+        assertThat(lines.get(0)).isEqualTo(String.join(",", UserExportWriter.CSV_COLUMNS));
+        assertThat(lines).anyMatch(line -> line.startsWith(user.getId() + "," + DEFAULT_LOGIN + "," + user.getEmail() +
+            "," + DEFAULT_FIRSTNAME + "," + DEFAULT_LASTNAME + "," + DEFAULT_LANGKEY + "," + DEFAULT_IMAGEURL +
+            ",true,," + user.getCreatedBy() + ","));
+    }
+
+    @Test
+    @Transactional
+    public void searchUsers() throws Exception {
+        userRepository.saveAndFlush(user);
+
+        restUserMockMvc.perform(get("/api/users/_search?q=HNDO")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.[*].login").value(hasItem(DEFAULT_LOGIN)))
+            .andExpect(jsonPath("$.[*].email").value(hasItem(user.getEmail())));
+        restUserMockMvc.perform(get("/api/users/_search?q=" + DEFAULT_LASTNAME.toUpperCase() + "&size=1")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(1));
+        restUserMockMvc.perform(get("/api/users/_search").param("q", "jo%n")
+            .accept(MediaType.APPLICATION_JSON))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(0));
+    }
+
+    @Test
+    @Transactional
+    public void searchUsersWithShortTerm() throws Exception {
+        restUserMockMvc.perform(get("/api/users/_search").param("q", " jo "))
+            .andExpect(status().isBadRequest());
+    }
+
+    private static void assertImportResult(String result, int line, String login, String status) {
+        assertThat((Integer) JsonPath.read(result, "$.line")).isEqualTo(line);
+        assertThat((String) JsonPath.read(result, "$.login")).isEqualTo(login);
+        assertThat((String) JsonPath.read(result, "$.status")).isEqualTo(status);
+    }
+
     @Test
     @Transactional
     public void getAllUsers() throws Exception {
@@ -245,7 +415,54 @@ public class UserResourceIT {
             .andExpect(jsonPath("$.content.[*].lastName").value(hasItem(DEFAULT_LASTNAME)))
             .andExpect(jsonPath("$.content.[*].email").value(hasItem(DEFAULT_EMAIL)))
             .andExpect(jsonPath("$.content.[*].imageUrl").value(hasItem(DEFAULT_IMAGEURL)))
-            .andExpect(jsonPath("$.content.[*].langKey").value(hasItem(DEFAULT_LANGKEY)));
+            .andExpect(jsonPath("$.content.[*].langKey").value(hasItem(DEFAULT_LANGKEY)))
+            .andExpect(jsonPath("$.content[?(@.login == 'admin')].authorities[*]")
+                .value(hasItems(AuthoritiesConstants.ADMIN, AuthoritiesConstants.USER)));
+    }
+
+    @Test
+    @Transactional
+    public void getAllUsersAfterCursor() throws Exception {
+        userRepository.saveAndFlush(user);
+        User other = createEntity(em);
+        userRepository.saveAndFlush(other);
+
+        List<String> expectedLogins = new ArrayList<>();
+        List<String> expectedIds = new ArrayList<>();
+        for (User existing : userRepository.findAll()) {
+            if (!Constants.ANONYMOUS_USER.equals(existing.getLogin())) {
+                expectedLogins.add(existing.getLogin());
+                expectedIds.add(existing.getId().toString());
+            }
+        }
+        Collections.sort(expectedLogins);
+
+        assertThat(readAllPages("/api/users?cursor=&size=2", "$[*].login")).containsExactlyElementsOf(expectedLogins);
+        assertThat(readAllPages("/api/users?cursor=&size=2&sort=id,desc", "$[*].id"))
+            .containsExactlyInAnyOrderElementsOf(expectedIds);
+    }
+
+    private List<String> readAllPages(String url, String path) throws Exception {
+        List<String> values = new ArrayList<>();
+        while (url != null) {
+            MvcResult result = restUserMockMvc.perform(get(url).accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("X-Total-Count"))
+                .andReturn();
+            values.addAll(JsonPath.read(result.getResponse().getContentAsString(), path));
+            String link = result.getResponse().getHeader(HttpHeaders.LINK);
+            url = link == null ? null : link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+        }
+        return values;
+    }
+
+    @Test
+    @Transactional
+    public void getAllUsersWithInvalidCursor() throws Exception {
+        restUserMockMvc.perform(get("/api/users?cursor=bm90LWEtY3Vyc29y"))
+            .andExpect(status().isBadRequest());
+        restUserMockMvc.perform(get("/api/users?cursor=&sort=email"))
+            .andExpect(status().isBadRequest());
     }
 
     @Test
@@ -254,7 +471,7 @@ public class UserResourceIT {
         // Initialize the database
         userRepository.saveAndFlush(user);
 
-        assertThat(cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).get(user.getLogin())).isNull();
+        assertThat(cacheManager.getCache(UserCache.USERS_CACHE).get(user.getId())).isNull();
 
         // Get the user
         restUserMockMvc.perform(get("/api/users/{login}", user.getLogin()))
@@ -267,7 +484,8 @@ public class UserResourceIT {
             .andExpect(jsonPath("$.imageUrl").value(DEFAULT_IMAGEURL))
             .andExpect(jsonPath("$.langKey").value(DEFAULT_LANGKEY));
 
-        assertThat(cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).get(user.getLogin())).isNotNull();
+        assertThat(cacheManager.getCache(UserCache.USERS_CACHE).get(user.getId())).isNotNull();
+        assertThat(cacheManager.getCache(UserCache.USER_IDS_BY_LOGIN_CACHE).get(user.getLogin()).get()).isEqualTo(user.getId());
     }
 
     @Test
@@ -460,8 +678,6 @@ public class UserResourceIT {
             .accept(TestUtil.APPLICATION_JSON))
             .andExpect(status().isNoContent());
 
-        assertThat(cacheManager.getCache(UserRepository.USERS_BY_LOGIN_CACHE).get(user.getLogin())).isNull();
-
         // Validate the database is empty
         assertPersistedUsers(users -> assertThat(users).hasSize(databaseSizeBeforeDelete - 1));
     }